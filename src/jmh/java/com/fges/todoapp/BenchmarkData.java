@@ -0,0 +1,118 @@
+package com.fges.todoapp;
+
+import com.github.javafaker.Faker;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Jeux de données des benchmarks : générés une fois avec javafaker (graine fixe) dans target/jmh-data,
+ * puis réutilisés d'un fork et d'une exécution à l'autre.
+ */
+final class BenchmarkData {
+    private static final Path DATA_DIRECTORY = Paths.get("target", "jmh-data");
+    private static final int DISTINCT_TASKS = 10_000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param format extension du fichier : json, csv ou todo
+     * @return le fichier de {@code size} tâches, créé s'il n'existe pas encore
+     */
+    static synchronized Path dataset(String format, int size) throws IOException {
+        Path dataset = DATA_DIRECTORY.resolve("todos-" + size + "." + format);
+        if (Files.exists(dataset)) {
+            return dataset;
+        }
+        Files.createDirectories(DATA_DIRECTORY);
+        Path partial = DATA_DIRECTORY.resolve("partial-" + size + "." + format);
+        Files.deleteIfExists(partial);
+        App.createStorageManager(partial).insertAll(todos(size), partial);
+        Files.move(partial, dataset, StandardCopyOption.ATOMIC_MOVE);
+        return dataset;
+    }
+
+    /**
+     * Copie modifiable d'un jeu de données, pour les benchmarks qui écrivent.
+     */
+    static Path copy(String format, int size, Path directory) throws IOException {
+        Path copy = directory.resolve("todos." + format);
+        Files.copy(dataset(format, size), copy, StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+
+    /**
+     * {@code size} tâches tirées d'un vocabulaire de {@value #DISTINCT_TASKS} textes : générer
+     * un million de phrases avec javafaker prendrait plus de temps que les benchmarks eux-mêmes.
+     */
+    static List<Todo> todos(int size) {
+        Faker faker = new Faker(Locale.ENGLISH, new Random(42));
+        Random random = new Random(42);
+        String[] tasks = new String[DISTINCT_TASKS];
+        for (int i = 0; i < tasks.length; i++) {
+            // Textes variés : virgules et guillemets passent par l'échappement CSV et JSON
+            if (i % 3 == 0) {
+                tasks[i] = faker.lorem().sentence();
+            } else if (i % 3 == 1) {
+                tasks[i] = "Call " + faker.name().fullName() + ", " + faker.phoneNumber().cellPhone();
+            } else {
+                tasks[i] = "Read \"" + faker.book().title() + "\"";
+            }
+        }
+        boolean[] done = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            done[i] = random.nextInt(4) == 0;
+        }
+        return new AbstractList<>() {
+            @Override
+            public Todo get(int index) {
+                return new Todo(tasks[index % tasks.length], done[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Supprime un fichier de tâches écrit par un benchmark et ses fichiers annexes (journal, index).
+     */
+    static void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(JsonWriteAheadLog.pathOf(file));
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + JsonWriteAheadLog.SUFFIX + ".tmp"));
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+        Files.deleteIfExists(TodoIndex.indexPath(file));
+    }
+
+    /**
+     * Supprime le dossier temporaire d'un benchmark et tout ce qu'il contient.
+     */
+    static void deleteTree(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    static PrintStream discardingStream() {
+        return new PrintStream(OutputStream.nullOutputStream());
+    }
+}
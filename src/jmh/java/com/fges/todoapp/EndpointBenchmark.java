@@ -0,0 +1,106 @@
+package com.fges.todoapp;
+
+import fr.anthonyquere.dumbcrud.CrudProvider;
+import fr.anthonyquere.dumbcrud.DummyCrudEndpoint;
+import fr.anthonyquere.dumbcrud.WriteBehindCrudProvider;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Débit du serveur web sur un fichier JSON, requêtes envoyées par plusieurs clients en parallèle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class EndpointBenchmark {
+
+    @Param({"none", "enqueue", "flush"})
+    public String writeBehind;
+
+    @Param({"1000"})
+    public int size;
+
+    private Path directory;
+    private Path source;
+    private WriteBehindCrudProvider<Todo> queue;
+    private DummyCrudEndpoint<Todo> endpoint;
+    private HttpClient client;
+    private HttpRequest post;
+    private HttpRequest getPage;
+    private PrintStream stderr;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Le serveur trace chaque requête sur stderr
+        stderr = System.err;
+        System.setErr(BenchmarkData.discardingStream());
+
+        directory = Files.createTempDirectory("todo-bench");
+        source = BenchmarkData.copy("json", size, directory);
+        CrudProvider<Todo> provider = new TodoCrudProvider(new JsonFileManager(), source);
+        if (!writeBehind.equals("none")) {
+            queue = new WriteBehindCrudProvider<>(provider, 10_000, 1000, Duration.ofMillis(20), Duration.ofSeconds(5),
+                    writeBehind.equals("enqueue")
+                            ? WriteBehindCrudProvider.Durability.ACK_AFTER_ENQUEUE
+                            : WriteBehindCrudProvider.Durability.ACK_AFTER_FLUSH);
+            provider = queue;
+        }
+        // Comme la commande serve : sans TCP_NODELAY, chaque réponse attend l'ACK retardé du client
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        endpoint = new DummyCrudEndpoint<>("todos", provider, Todo.class);
+        endpoint.run(0);
+
+        // HTTP/1.1 direct : sans tentative de passage en h2c à chaque connexion
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI uri = URI.create("http://localhost:" + endpoint.port() + "/todos");
+        post = HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"task\":\"Benchmark task\",\"done\":false}"))
+                .build();
+        getPage = HttpRequest.newBuilder(URI.create(uri + "?limit=100")).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        endpoint.stop(0);
+        if (queue != null) {
+            queue.close();
+        }
+        System.setErr(stderr);
+        BenchmarkData.deleteTree(directory);
+    }
+
+    @Benchmark
+    public String post() throws Exception {
+        return client.send(post, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String getPage() throws Exception {
+        return client.send(getPage, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
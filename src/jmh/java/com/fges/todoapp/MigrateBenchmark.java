@@ -0,0 +1,80 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Commande migrate de bout en bout, comme un lancement en ligne de commande : le fichier source
+ * est retiré du cache et la cible supprimée avant chaque appel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MigrateBenchmark {
+
+    @Param({"json", "csv"})
+    public String from;
+
+    @Param({"csv", "json", "todo"})
+    public String to;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private Path source;
+    private Path directory;
+    private Path output;
+    private String[] args;
+    private PrintStream stdout;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = BenchmarkData.dataset(from, size);
+        directory = Files.createTempDirectory("todo-bench");
+        output = directory.resolve("migrated." + to);
+        args = new String[]{"migrate", "-s", source.toString(), "-o", output.toString()};
+        stdout = System.out;
+        System.setOut(BenchmarkData.discardingStream());
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFiles() throws IOException {
+        BenchmarkData.delete(output);
+        TodoCache.INSTANCE.invalidate(source);
+        TodoCache.INSTANCE.invalidate(output);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        BenchmarkData.deleteTree(directory);
+    }
+
+    @Benchmark
+    public int migrate() {
+        int status = App.exec(args);
+        if (status != 0) {
+            throw new IllegalStateException("migrate failed with status " + status);
+        }
+        return status;
+    }
+}
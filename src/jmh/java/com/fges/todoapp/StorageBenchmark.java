@@ -0,0 +1,81 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lecture et insertion avec les gestionnaires JSON et CSV, sans le cache de l'application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param({"json", "csv"})
+    public String format;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private TodoFileManager manager;
+    private Path source;
+    private Path directory;
+    private Path insertTarget;
+    private PrintStream stdout;
+
+    @Setup
+    public void setUp() throws IOException {
+        manager = format.equals("json") ? new JsonFileManager() : new CsvFileManager();
+        source = BenchmarkData.dataset(format, size);
+        directory = Files.createTempDirectory("todo-bench");
+        // Les insertions agrandissent leur copie du jeu de données au fil des itérations
+        insertTarget = BenchmarkData.copy(format, size, directory);
+        stdout = System.out;
+        System.setOut(BenchmarkData.discardingStream());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        BenchmarkData.deleteTree(directory);
+    }
+
+    @Benchmark
+    public List<Todo> readAll() throws IOException {
+        return manager.readAll(source);
+    }
+
+    @Benchmark
+    public void list() throws IOException {
+        manager.list(source, false);
+    }
+
+    @Benchmark
+    public void listDone() throws IOException {
+        manager.list(source, true);
+    }
+
+    @Benchmark
+    public void insert() throws IOException {
+        manager.insert("Benchmark task, with \"quotes\"", false, insertTarget);
+    }
+}
@@ -1,172 +1,74 @@
 package com.fges.todoapp;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import fr.anthonyquere.dumbcrud.CrudProvider;
+import fr.anthonyquere.dumbcrud.DummyCrudEndpoint;
+import fr.anthonyquere.dumbcrud.Metrics;
+import fr.anthonyquere.dumbcrud.WriteBehindCrudProvider;
 import org.apache.commons.cli.*;
-import java.util.stream.Collectors;
-import java.nio.file.StandardOpenOption;
 
-
-/**
- * Interface définissant les opérations pour gérer les fichiers de tâches TODO.
- */
-interface TodoFileManager {
-    void insert(String todo, boolean isDone, Path filePath) throws IOException;
-    void list(Path filePath, boolean onlyDone) throws IOException;
-    List<String[]> readAll(Path filePath) throws IOException;
-}
-
-/**
- * Gestionnaire de fichiers pour le format JSON.
- */
-class JsonFileManager implements TodoFileManager {
-    private final ObjectMapper mapper = new ObjectMapper();
-
-    @Override
-    public void insert(String todo, boolean isDone, Path filePath) throws IOException {
-        ArrayNode todos = readTodosFromFile(filePath);
-        todos.add(createTodoNode(todo, isDone));
-        writeTodosToFile(filePath, todos);
-    }
-
-    @Override
-    public void list(Path filePath, boolean onlyDone) throws IOException {
-        ArrayNode todos = readTodosFromFile(filePath);
-        todos.forEach(node -> {
-            boolean done = node.get("done").asBoolean();
-            String task = node.get("task").asText();
-            if (!onlyDone || done) {
-                System.out.println("- " + (done ? "[DONE] " : "[TODO] ") + task);
-            }
-        });
-    }
-
-    @Override
-    public List<String[]> readAll(Path filePath) throws IOException {
-        List<String[]> todosList = new ArrayList<>();
-        ArrayNode todos = readTodosFromFile(filePath);
-        todos.forEach(node -> {
-            String task = node.get("task").asText();
-            boolean done = node.get("done").asBoolean();
-            todosList.add(new String[]{task, String.valueOf(done)});
-        });
-        return todosList;
-    }
-
-    private ArrayNode readTodosFromFile(Path filePath) throws IOException {
-        if (Files.exists(filePath)) {
-            JsonNode jsonNode = mapper.readTree(Files.readString(filePath));
-            if (jsonNode.isArray()) {
-                return (ArrayNode) jsonNode;
-            }
-        }
-        return mapper.createArrayNode();
-    }
-
-    private ObjectNode createTodoNode(String todo, boolean isDone) {
-        ObjectNode todoNode = mapper.createObjectNode();
-        todoNode.put("task", todo);
-        todoNode.put("done", isDone);
-        return todoNode;
-    }
-
-    private void writeTodosToFile(Path filePath, ArrayNode todos) throws IOException {
-        Files.writeString(filePath, mapper.writeValueAsString(todos));
-    }
-}
-/**
- * Gestionnaire de fichiers pour le format CSV.
- */
-class CsvFileManager implements TodoFileManager {
-
-    @Override
-    public void insert(String todo, boolean isDone, Path filePath) throws IOException {
-        // Ensure to handle commas in todo text properly by enclosing the entire todo in quotes if not already done
-        if (!todo.startsWith("\"")) {
-            todo = "\"" + todo + "\"";
-        }
-        String todoLine = String.format("%s,%s\n", todo, isDone);
-        Files.writeString(filePath, todoLine, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-    }
-
-    @Override
-    public void list(Path filePath, boolean onlyDone) throws IOException {
-        readTodosFromFile(filePath).stream()
-                .filter(todo -> !onlyDone || Boolean.parseBoolean(todo[1]))
-                .forEach(todo -> System.out.println("- " + (Boolean.parseBoolean(todo[1]) ? "[DONE] " : "[TODO] ") + todo[0]));
-    }
-
-    @Override
-    public List<String[]> readAll(Path filePath) throws IOException {
-        return readTodosFromFile(filePath);
-    }
-
-    private List<String[]> readTodosFromFile(Path filePath) throws IOException {
-        if (Files.exists(filePath)) {
-            return Files.readAllLines(filePath).stream()
-                    .map(this::parseTodoLine)
-                    .collect(Collectors.toList());
-        }
-        return new ArrayList<>();
-    }
-
-    private String[] parseTodoLine(String line) {
-        // Enhanced parsing to handle todos containing commas by considering the first comma as part of the todo if enclosed in quotes
-        boolean isInQuotes = line.startsWith("\"");
-        String[] parts;
-
-        if (isInQuotes) {
-            int firstComma = line.indexOf("\",");
-            if (firstComma != -1) {
-                String task = line.substring(1, firstComma);
-                String done = line.substring(firstComma + 2);
-                parts = new String[] { task, done };
-            } else {
-                parts = new String[]{"Unknown Task", "false"};
-            }
-        } else {
-            parts = line.split(",", 2);
-        }
-
-        if (parts.length == 2) {
-            parts[0] = parts[0].replace("\"", ""); // Remove surrounding quotes if present
-            return parts;
-        }
-        return new String[]{"Unknown Task", "false"};
-    }
-}
 /**
  * Application principale pour la gestion des tâches TODO.
  */
 
 public class App {
 
+    // Options et gestionnaires sont créés une seule fois et partagés par toutes les commandes de la JVM
+    private static final Options OPTIONS = new Options();
+    private static final Metrics METRICS = Metrics.INSTANCE;
+    private static final TodoFileManager JSON_FILE_MANAGER = new JsonFileManager();
+    private static final TodoFileManager CSV_FILE_MANAGER = new CsvFileManager();
+    private static final TodoFileManager BINARY_FILE_MANAGER = new BinaryFileManager();
+    private static final TodoFileManager JSON_GZ_FILE_MANAGER = new GzipTodoFileManager(GzipTodoFileManager.Format.JSON);
+    private static final TodoFileManager CSV_GZ_FILE_MANAGER = new GzipTodoFileManager(GzipTodoFileManager.Format.CSV);
+    private static final TodoFileManager SHARDED_FILE_MANAGER = new ShardedTodoFileManager(App::createStorageManager);
+    // Une commande seule depuis main() lit chaque fichier une fois : le cache ne servirait qu'à occuper le tas
+    private static volatile boolean caching = true;
+
+    static {
+        setupCommandLineOptions(OPTIONS);
+    }
+
     public static void main(String[] args) {
+        caching = false;
         System.exit(exec(args));
     }
 
     public static int exec(String[] args) {
-        Options options = new Options();
-        setupCommandLineOptions(options);
-
-        CommandLine cmd = parseCommandLineArguments(args, options);
+        CommandLine cmd = parseCommandLineArguments(args, OPTIONS);
         if (cmd == null) return 1; // Error in parsing command line options
 
         return processCommand(cmd);
     }
 
     private static void setupCommandLineOptions(Options options) {
-        options.addRequiredOption("s", "source", true, "File containing the todos");
+        options.addRequiredOption("s", "source", true, "File containing the todos, or a directory or glob (e.g. 'todos-*.csv') of shard files");
         options.addOption("d", "done", false, "Mark todo as done or list only done todos");
         options.addOption("o", "output", true, "Output file for migration");
+        options.addOption("f", "follow", false, "Keep listing the todos appended to the source (list only)");
+        options.addOption("i", "index", false, "Build an index next to the source to speed up list --done");
+        options.addOption("p", "port", true, "Port of the web server started by the serve command (default 8080)");
+        options.addOption("w", "write-behind", true,
+                "Queue POSTed todos and write them in batches; ack after 'enqueue' or after 'flush'");
+        options.addOption(Option.builder().longOpt("stats")
+                .desc("Print counters and latencies (insert, list, migrate, file reads) to stderr").build());
+        options.addOption(Option.builder().longOpt("dictionary")
+                .desc("Share identical todos in memory (cache, serve, repl); pays off when task texts repeat").build());
         options.addOption("h", "help", false, "Show help");
     }
 
@@ -190,23 +92,47 @@ public class App {
     private static int processCommand(CommandLine cmd) {
         if (cmd == null) return 1; // Early exit if cmd is null, indicating help was requested or an error occurred
 
-        Path sourceFilePath = Paths.get(cmd.getOptionValue("s"));
+        String command = null;
+        int status = 1;
+        long start = System.nanoTime();
         try {
-            String command = cmd.getArgList().get(0).toLowerCase();
-            switch (command) {
-                case "insert":
-                    return handleInsertCommand(cmd, sourceFilePath);
-                case "list":
-                    return handleListCommand(cmd, sourceFilePath);
-                case "migrate":
-                    return handleMigrateCommand(cmd, sourceFilePath);
-                default:
-                    System.err.println("Unknown command: " + command);
-                    return 1;
-            }
+            command = cmd.getArgList().get(0).toLowerCase();
+            // Réglé à chaque commande : dans le repl, le cache survit d'une ligne à l'autre
+            TodoCache.INSTANCE.setDictionary(cmd.hasOption("dictionary") ? TaskDictionary.INSTANCE : null);
+            status = runCommand(cmd, command, pathOf(cmd.getOptionValue("s")));
         } catch (Exception e) {
             System.err.println("An error occurred: " + e.getMessage());
-            return 1;
+        }
+        if (command != null) {
+            METRICS.recordSince(command, start);
+            if (status != 0) {
+                METRICS.increment(command + ".failed");
+            }
+        }
+        if (cmd.hasOption("stats")) {
+            System.err.print(METRICS.report());
+        }
+        return status;
+    }
+
+    private static int runCommand(CommandLine cmd, String command, Path sourceFilePath) throws Exception {
+        switch (command) {
+            case "insert":
+                return handleInsertCommand(cmd, sourceFilePath);
+            case "list":
+                return handleListCommand(cmd, sourceFilePath);
+            case "migrate":
+                return handleMigrateCommand(cmd, sourceFilePath);
+            case "serve":
+                caching = true;
+                return handleServeCommand(cmd, sourceFilePath);
+            case "repl":
+                caching = true;
+                return handleReplCommand(sourceFilePath, cmd.hasOption("dictionary"),
+                        new BufferedReader(new InputStreamReader(System.in)));
+            default:
+                System.err.println("Unknown command: " + command);
+                return 1;
         }
     }
 
@@ -222,39 +148,254 @@ public class App {
         return 0;
     }
 
-    private static int handleListCommand(CommandLine cmd, Path sourceFilePath) throws IOException {
+    private static int handleListCommand(CommandLine cmd, Path sourceFilePath) throws IOException, InterruptedException {
         boolean onlyDone = cmd.hasOption("d");
+        if (cmd.hasOption("f")) {
+            if (!(createStorageManager(sourceFilePath) instanceof FollowableTodoFileManager followable)) {
+                System.err.println("Follow mode is not supported for " + sourceFilePath);
+                return 1;
+            }
+            return followList(followable, sourceFilePath, onlyDone);
+        }
+        if (cmd.hasOption("i") && Files.exists(sourceFilePath)
+                && createStorageManager(sourceFilePath) instanceof IndexableTodoFileManager indexable) {
+            TodoIndex.update(indexable, sourceFilePath);
+        }
         getFileManager(sourceFilePath).list(sourceFilePath, onlyDone);
         return 0;
     }
 
+    /**
+     * Affiche les tâches puis celles qui sont ajoutées ensuite, jusqu'à l'arrêt du processus.
+     * Chaque notification du dossier ne relit que les données ajoutées depuis la lecture précédente ;
+     * le fichier est aussi relu toutes les deux secondes, au cas où le système ne notifierait pas.
+     */
+    private static int followList(FollowableTodoFileManager manager, Path sourceFilePath, boolean onlyDone)
+            throws IOException, InterruptedException {
+        TodoVisitor printer = todo -> {
+            if (!onlyDone || todo.done()) {
+                System.out.println(todo.toDisplayLine());
+            }
+        };
+        Path directory = sourceFilePath.toAbsolutePath().getParent();
+        String fileName = sourceFilePath.getFileName().toString();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            FollowableTodoFileManager.Cursor cursor = manager.readFrom(sourceFilePath, FollowableTodoFileManager.Cursor.START, printer);
+            while (true) {
+                WatchKey key = watcher.poll(2, TimeUnit.SECONDS);
+                if (key != null) {
+                    boolean relevant = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        // Le fichier lui-même, son journal ou le fichier qui le remplace à la compaction
+                        relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || event.context().toString().startsWith(fileName);
+                    }
+                    if (!key.reset()) {
+                        return 0;
+                    }
+                    if (!relevant) {
+                        continue;
+                    }
+                }
+                cursor = manager.readFrom(sourceFilePath, cursor, printer);
+            }
+        }
+    }
+
     private static int handleMigrateCommand(CommandLine cmd, Path sourceFilePath) throws IOException {
         String outputFileName = cmd.getOptionValue("o");
         if (outputFileName == null) {
             System.err.println("Missing output file for migration");
             return 1;
         }
-        Path outputFilePath = Paths.get(outputFileName);
+        Path outputFilePath = pathOf(outputFileName);
         TodoFileManager sourceManager = getFileManager(sourceFilePath);
         TodoFileManager outputManager = getFileManager(outputFilePath);
 
-        sourceManager.readAll(sourceFilePath).forEach(todo -> {
-            try {
-                outputManager.insert(todo[0], Boolean.parseBoolean(todo[1]), outputFilePath);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
+        if (Files.exists(sourceFilePath) && Files.exists(outputFilePath) && Files.isSameFile(sourceFilePath, outputFilePath)) {
+            System.err.println("Source and output files must be different");
+            return 1;
+        }
+
+        // Une seule session d'écriture : le fichier cible est écrit en une passe
+        try (TodoWriter writer = outputManager.openWriter(outputFilePath)) {
+            sourceManager.forEach(sourceFilePath, writer::write);
+        }
 
         System.out.println("Migration completed successfully");
         return 0;
     }
 
+    /**
+     * Sert les tâches du fichier source en HTTP sur /todos (GET pour lister, POST pour ajouter),
+     * jusqu'à l'arrêt du processus.
+     * Avec -w, les ajouts passent par une file écrite en lots par un thread de fond.
+     */
+    private static int handleServeCommand(CommandLine cmd, Path sourceFilePath) throws IOException, InterruptedException {
+        int port = Integer.parseInt(cmd.getOptionValue("p", "8080"));
+        CrudProvider<Todo> provider = new TodoCrudProvider(getFileManager(sourceFilePath), sourceFilePath,
+                cmd.hasOption("dictionary") ? TaskDictionary.INSTANCE : null);
+        WriteBehindCrudProvider<Todo> writeBehind = null;
+        if (cmd.hasOption("w")) {
+            writeBehind = new WriteBehindCrudProvider<>(provider, 10_000, 1000, Duration.ofMillis(20),
+                    Duration.ofSeconds(5), parseDurability(cmd.getOptionValue("w")));
+            provider = writeBehind;
+        }
+        // Sans TCP_NODELAY, une connexion maintenue attend l'ACK retardé du client (~40 ms) à chaque réponse ;
+        // le serveur du JDK ne lit cette propriété qu'à la création du premier serveur
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        DummyCrudEndpoint<Todo> endpoint = new DummyCrudEndpoint<>("todos", provider, Todo.class);
+        endpoint.run(port);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        WriteBehindCrudProvider<Todo> queued = writeBehind;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            endpoint.stop(1);
+            if (queued != null) {
+                // Écrit ce qui reste dans la file avant de quitter
+                queued.close();
+            }
+            stopped.countDown();
+        }));
+        stopped.await();
+        return 0;
+    }
+
+    private static WriteBehindCrudProvider.Durability parseDurability(String mode) {
+        switch (mode) {
+            case "enqueue":
+                return WriteBehindCrudProvider.Durability.ACK_AFTER_ENQUEUE;
+            case "flush":
+                return WriteBehindCrudProvider.Durability.ACK_AFTER_FLUSH;
+            default:
+                throw new IllegalArgumentException("Unknown write-behind mode: " + mode + " (expected enqueue or flush)");
+        }
+    }
+
+    /**
+     * Lit des commandes sur l'entrée standard, une par ligne, et les exécute dans la même JVM :
+     * les gestionnaires, le cache et les options restent chargés d'une commande à l'autre.
+     * Une ligne sans -s utilise le fichier source de la session, et --dictionary s'applique à toutes
+     * les lignes d'une session lancée avec ; "exit" ou "quit" termine.
+     */
+    static int handleReplCommand(Path sourceFilePath, boolean dictionary, BufferedReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.equals("exit") || line.equals("quit")) {
+                break;
+            }
+            List<String> args;
+            try {
+                args = tokenize(line);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                continue;
+            }
+            if (!args.contains("-s") && !args.contains("--source")) {
+                args.add("-s");
+                args.add(sourceFilePath.toString());
+            }
+            if (dictionary && !args.contains("--dictionary")) {
+                args.add("--dictionary");
+            }
+            CommandLine cmd = parseCommandLineArguments(args.toArray(new String[0]), OPTIONS);
+            if (cmd != null && !cmd.getArgList().isEmpty() && cmd.getArgList().get(0).equalsIgnoreCase("repl")) {
+                System.err.println("Already in repl mode");
+            } else if (cmd != null) {
+                processCommand(cmd);
+            }
+            System.out.flush();
+        }
+        return 0;
+    }
+
+    /**
+     * Découpe une ligne comme le ferait un shell simple : espaces, guillemets simples ou doubles et antislash.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                current.append(line.charAt(++i));
+                inToken = true;
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated quote: " + line);
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Chemin d'une option de fichier. Un nom terminé par un séparateur ("shards/") désigne un dossier
+     * de fichiers partitionnés : il est créé s'il n'existe pas encore.
+     */
+    private static Path pathOf(String name) throws IOException {
+        Path path = Paths.get(name);
+        if ((name.endsWith("/") || name.endsWith(File.separator)) && !Files.isDirectory(path)) {
+            Files.createDirectories(path);
+        }
+        return path;
+    }
+
+    /**
+     * Gestionnaire du format du fichier, derrière le cache des fichiers déjà lus dans la JVM
+     * quand elle sert plusieurs commandes (repl, serve, appels à {@link #exec(String[])}).
+     * Une source partitionnée n'est pas mise en cache : ses fichiers sont lus en flux, en parallèle.
+     */
     private static TodoFileManager getFileManager(Path filePath) {
-        if (filePath.toString().endsWith(".json")) {
-            return new JsonFileManager();
+        TodoFileManager manager = createStorageManager(filePath);
+        if (!caching || manager instanceof ShardedTodoFileManager) {
+            return manager;
+        }
+        return new CachingTodoFileManager(manager, TodoCache.INSTANCE);
+    }
+
+    static TodoFileManager createStorageManager(Path filePath) {
+        if (ShardedTodoFileManager.isShardedSource(filePath)) {
+            return SHARDED_FILE_MANAGER;
+        } else if (filePath.toString().endsWith(".json")) {
+            return JSON_FILE_MANAGER;
         } else if (filePath.toString().endsWith(".csv")) {
-            return new CsvFileManager();
+            return CSV_FILE_MANAGER;
+        } else if (filePath.toString().endsWith(".todo")) {
+            return BINARY_FILE_MANAGER;
+        } else if (filePath.toString().endsWith(".json" + GzipTodoFileManager.SUFFIX)) {
+            return JSON_GZ_FILE_MANAGER;
+        } else if (filePath.toString().endsWith(".csv" + GzipTodoFileManager.SUFFIX)) {
+            return CSV_GZ_FILE_MANAGER;
         } else {
             throw new IllegalArgumentException("Unsupported file format: " + filePath);
         }
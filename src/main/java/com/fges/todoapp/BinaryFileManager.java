@@ -0,0 +1,290 @@
+package com.fges.todoapp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gestionnaire de fichiers pour le format binaire ".todo".
+ *
+ * <pre>
+ * en-tête (24 octets) : "TODB" | version (short) | réservé (short) | nombre de tâches (int)
+ *                       | position du bitset (long) | réservé (int)
+ * tâches              : pour chaque tâche, longueur (int) puis texte UTF-8,
+ *                       ou -position (int) d'une tâche précédente de même texte (version 2)
+ * bitset              : un bit "done" par tâche, bit (i % 8) de l'octet i / 8
+ * </pre>
+ *
+ * Le fichier est lu par projection mémoire : list -d parcourt le bitset et saute
+ * les textes des tâches non terminées sans les décoder. Une session d'écriture produit un fichier
+ * complet qui remplace l'ancien par renommage : le fichier en place est toujours cohérent.
+ * Un texte répété dans une même session d'écriture n'est écrit qu'une fois ; la lecture
+ * décode une seule chaîne pour les références récentes à un même texte.
+ */
+class BinaryFileManager implements TodoFileManager {
+    static final int MAGIC = 0x544F4442; // "TODB"
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Textes distincts retenus par session d'écriture pour y faire référence
+    private static final int MAX_WRITER_TEXTS = 100_000;
+
+    @Override
+    public TodoWriter openWriter(Path filePath) throws IOException {
+        return new BinaryTodoWriter(filePath);
+    }
+
+    @Override
+    public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+        MappedByteBuffer buffer = map(filePath);
+        if (buffer == null) {
+            return;
+        }
+        int count = buffer.getInt(8);
+        int bitsetOffset = (int) buffer.getLong(12);
+        TextReader texts = new TextReader(buffer, bitsetOffset);
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            String task = texts.text(position);
+            position = texts.next(position);
+            visitor.visit(new Todo(task, isDone(buffer, bitsetOffset, i)));
+        }
+    }
+
+    @Override
+    public void list(Path filePath, boolean onlyDone) throws IOException {
+        if (!onlyDone) {
+            TodoFileManager.super.list(filePath, false);
+            return;
+        }
+        MappedByteBuffer buffer = map(filePath);
+        if (buffer == null) {
+            return;
+        }
+        int count = buffer.getInt(8);
+        int bitsetOffset = (int) buffer.getLong(12);
+        TextReader texts = new TextReader(buffer, bitsetOffset);
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (isDone(buffer, bitsetOffset, i)) {
+                System.out.println(new Todo(texts.text(position), true).toDisplayLine());
+            }
+            position = texts.next(position);
+        }
+    }
+
+    private static boolean isDone(ByteBuffer buffer, int bitsetOffset, int index) {
+        return (buffer.get(bitsetOffset + (index >>> 3)) & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * Projette le fichier en mémoire après avoir vérifié son en-tête, ou retourne null s'il est absent ou vide.
+     */
+    private static MappedByteBuffer map(Path filePath) throws IOException {
+        if (!Files.exists(filePath)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return null;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Binary todo file too large to map: " + filePath);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            checkHeader(buffer, size, filePath);
+            return buffer;
+        }
+    }
+
+    private static void checkHeader(ByteBuffer header, long size, Path filePath) throws IOException {
+        if (size < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary todo file: " + filePath);
+        }
+        if (header.getShort(4) != 1 && header.getShort(4) != VERSION) {
+            throw new IOException("Unsupported binary todo version " + header.getShort(4) + ": " + filePath);
+        }
+        long bitsetOffset = header.getLong(12);
+        if (bitsetOffset < HEADER_SIZE || bitsetOffset + (header.getInt(8) + 7) / 8 > size) {
+            throw new IOException("Corrupted binary todo file: " + filePath);
+        }
+    }
+
+    /**
+     * Lit le texte des tâches d'un fichier projeté. Les derniers textes décodés sont gardés par
+     * position : les références répétées à un même texte retournent la même chaîne.
+     */
+    private static final class TextReader {
+        private static final int RECENT_SIZE = 4096;
+
+        private final ByteBuffer buffer;
+        private final int end;
+        private final int[] recentPositions = new int[RECENT_SIZE];
+        private final String[] recent = new String[RECENT_SIZE];
+        private byte[] bytes = new byte[256];
+
+        TextReader(ByteBuffer buffer, int end) {
+            this.buffer = buffer;
+            this.end = end;
+        }
+
+        /**
+         * Position de la tâche suivante.
+         */
+        int next(int position) {
+            int length = buffer.getInt(position);
+            return position + 4 + Math.max(0, length);
+        }
+
+        String text(int position) throws IOException {
+            int length = buffer.getInt(position);
+            int literal = position;
+            if (length < 0) {
+                literal = -length;
+                if (literal < HEADER_SIZE || literal >= position || (length = buffer.getInt(literal)) < 0) {
+                    throw new IOException("Corrupted binary todo file: invalid text reference at " + position);
+                }
+            }
+            if (literal + 4L + length > end) {
+                throw new IOException("Corrupted binary todo file: text overflows at " + position);
+            }
+            int slot = (literal * 0x9E3779B1 >>> 20) & (RECENT_SIZE - 1);
+            if (recentPositions[slot] == literal && recent[slot] != null) {
+                return recent[slot];
+            }
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(literal + 4, bytes, 0, length);
+            String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            recentPositions[slot] = literal;
+            recent[slot] = text;
+            return text;
+        }
+    }
+
+    /**
+     * Écrit la nouvelle version du fichier dans "&lt;fichier&gt;.tmp" : les tâches existantes y sont
+     * recopiées, suivies des nouvelles, du bitset puis de l'en-tête. Le fichier temporaire remplace
+     * l'ancien par renommage atomique à la fermeture ; un arrêt en cours de session laisse l'ancien intact.
+     */
+    private static final class BinaryTodoWriter implements TodoWriter {
+        private final FileChannel channel;
+        private final TodoFileLock lock;
+        private final ReplacementFile replacement;
+        private final DataOutputStream out;
+        private final Map<String, Integer> written = new HashMap<>();
+        private byte[] bitset;
+        private int count;
+        private long position;
+        private boolean committed;
+
+        BinaryTodoWriter(Path filePath) throws IOException {
+            // Verrou du fichier en place : un autre écrivain a pu le remplacer pendant qu'on attendait
+            lock = TodoFileLock.openLocked(filePath);
+            channel = lock.channel();
+            ReplacementFile opened = null;
+            try {
+                if (channel.size() == 0) {
+                    bitset = new byte[64];
+                    position = HEADER_SIZE;
+                } else {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    readFully(header, 0);
+                    checkHeader(header, channel.size(), filePath);
+                    count = header.getInt(8);
+                    position = header.getLong(12);
+                    ByteBuffer existing = ByteBuffer.allocate(Math.max(64, (count + 7) / 8 * 2));
+                    existing.limit((count + 7) / 8);
+                    readFully(existing, position);
+                    bitset = existing.array();
+                }
+                opened = new ReplacementFile(filePath);
+                FileChannel target = opened.channel();
+                // Les tâches existantes sont recopiées telles quelles, références comprises
+                long copied = HEADER_SIZE;
+                target.position(HEADER_SIZE);
+                while (copied < position) {
+                    copied += channel.transferTo(copied, position - copied, target);
+                }
+                target.position(position);
+                out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(target), BUFFER_SIZE));
+            } catch (IOException | RuntimeException e) {
+                ReplacementFile created = opened;
+                try (lock; created) {
+                    throw e;
+                }
+            }
+            replacement = opened;
+        }
+
+        @Override
+        public void write(Todo todo) throws IOException {
+            String task = todo.task() == null ? "" : todo.task();
+            Integer literal = written.get(task);
+            if (literal != null) {
+                out.writeInt(-literal);
+                position += 4;
+            } else {
+                byte[] text = task.getBytes(StandardCharsets.UTF_8);
+                if (!task.isEmpty() && position <= Integer.MAX_VALUE && written.size() < MAX_WRITER_TEXTS) {
+                    written.put(task, (int) position);
+                }
+                out.writeInt(text.length);
+                out.write(text);
+                position += 4 + text.length;
+            }
+            if (count >>> 3 == bitset.length) {
+                bitset = Arrays.copyOf(bitset, bitset.length * 2);
+            }
+            if (todo.done()) {
+                bitset[count >>> 3] |= (byte) (1 << (count & 7));
+            }
+            count++;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (committed) {
+                return;
+            }
+            out.write(bitset, 0, (count + 7) / 8);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(count).putLong(position).putInt(0).flip();
+            while (header.hasRemaining()) {
+                replacement.channel().write(header, header.position());
+            }
+            replacement.commit();
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (lock; replacement) {
+                commit();
+            }
+        }
+
+        private void readFully(ByteBuffer buffer, long from) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of binary todo file");
+                }
+            }
+        }
+    }
+}
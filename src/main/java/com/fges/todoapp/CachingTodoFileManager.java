@@ -0,0 +1,137 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Décore un gestionnaire de fichiers avec {@link TodoCache} : les lectures répétées d'un
+ * fichier inchangé sont servies depuis la mémoire et les ajouts complètent le cache.
+ */
+class CachingTodoFileManager implements TodoFileManager {
+    private final TodoFileManager delegate;
+    private final TodoCache cache;
+
+    CachingTodoFileManager(TodoFileManager delegate, TodoCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public TodoWriter openWriter(Path filePath) throws IOException {
+        TodoWriter writer = delegate.openWriter(filePath);
+        TodoCache.Key before;
+        try {
+            // Lue sous le verrou de l'écrivain : une écriture d'un autre processus ne peut plus s'intercaler.
+            // L'écrivain crée le fichier s'il n'existait pas : vide, il ne contient encore aucune tâche
+            TodoCache.Key locked = TodoCache.Key.of(filePath);
+            before = locked == null || locked.size() == 0 ? null : locked;
+        } catch (IOException | RuntimeException e) {
+            try (writer) {
+                throw e;
+            }
+        }
+        return new TodoWriter() {
+            private List<Todo> added = new ArrayList<>();
+            private long bytes;
+            private TodoCache.Key after;
+            private boolean committed;
+
+            @Override
+            public void write(Todo todo) throws IOException {
+                writer.write(todo);
+                if (added != null) {
+                    added.add(todo);
+                    bytes += TodoCache.sizeOf(todo);
+                    if (bytes > cache.maxBytes()) {
+                        added = null;
+                    }
+                }
+            }
+
+            @Override
+            public void commit() throws IOException {
+                if (!committed) {
+                    writer.commit();
+                    // Lue elle aussi sous le verrou : elle ne peut contenir que les tâches de cette session
+                    after = TodoCache.Key.of(filePath);
+                    committed = true;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try (writer) {
+                    commit();
+                } catch (IOException | RuntimeException e) {
+                    cache.invalidate(filePath);
+                    throw e;
+                }
+                if (after == null) {
+                    cache.invalidate(filePath);
+                } else {
+                    cache.append(before, after, added);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+        TodoCache.Key key = TodoCache.Key.of(filePath);
+        if (key == null) {
+            delegate.forEach(filePath, visitor);
+            return;
+        }
+        List<Todo> cached = cache.get(key);
+        if (cached != null) {
+            for (Todo todo : cached) {
+                visitor.visit(todo);
+            }
+            return;
+        }
+        Loader loader = new Loader(visitor);
+        delegate.forEach(filePath, loader);
+        if (loader.loaded != null) {
+            cache.put(key, loader.loaded);
+        }
+    }
+
+    /**
+     * Transmet les tâches lues au visiteur et les garde pour le cache, tant qu'elles tiennent dans
+     * sa taille maximale : au-delà, elles sont abandonnées aussitôt et la lecture se poursuit en mémoire constante.
+     */
+    private final class Loader implements TodoVisitor {
+        private final TodoVisitor visitor;
+        private List<Todo> loaded = new ArrayList<>();
+        private long bytes;
+
+        Loader(TodoVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void visit(Todo todo) throws IOException {
+            if (loaded != null) {
+                loaded.add(todo);
+                bytes += TodoCache.sizeOf(todo);
+                if (bytes > cache.maxBytes()) {
+                    loaded = null;
+                }
+            }
+            visitor.visit(todo);
+        }
+    }
+
+    @Override
+    public void list(Path filePath, boolean onlyDone) throws IOException {
+        TodoCache.Key key = TodoCache.Key.of(filePath);
+        if (onlyDone && (key == null || cache.get(key) == null)) {
+            // Sans cache, le gestionnaire peut lister les tâches terminées sans tout lire (index, bitset)
+            delegate.list(filePath, true);
+            return;
+        }
+        TodoFileManager.super.list(filePath, onlyDone);
+    }
+}
@@ -0,0 +1,168 @@
+package com.fges.todoapp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Gestionnaire de fichiers pour le format CSV.
+ */
+class CsvFileManager implements IndexableTodoFileManager, FollowableTodoFileManager {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SEEK_BUFFER_SIZE = 4 * 1024;
+    private static final long PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final long parallelThreshold;
+    private final ParallelCsvReader parallelReader;
+
+    CsvFileManager() {
+        this(PARALLEL_THRESHOLD, CHUNK_SIZE);
+    }
+
+    /**
+     * @param parallelThreshold taille à partir de laquelle le fichier est lu par tranches en parallèle
+     * @param chunkSize taille visée pour chaque tranche
+     */
+    CsvFileManager(long parallelThreshold, int chunkSize) {
+        this.parallelThreshold = parallelThreshold;
+        this.parallelReader = new ParallelCsvReader(chunkSize, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public TodoWriter openWriter(Path filePath) throws IOException {
+        FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        TodoFileLock lock;
+        try {
+            lock = TodoFileLock.acquire(filePath, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+        return new TodoWriter() {
+            private boolean committed;
+
+            @Override
+            public void write(Todo todo) throws IOException {
+                writeTodo(writer, todo);
+            }
+
+            @Override
+            public void commit() throws IOException {
+                if (!committed) {
+                    writer.flush();
+                    channel.force(false);
+                    committed = true;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try (writer; lock) {
+                    commit();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void forEachIndexed(Path filePath, IndexedTodoVisitor visitor) throws IOException {
+        if (!Files.exists(filePath)) {
+            return;
+        }
+        // Les gros exports sont analysés sur tous les cœurs, le visiteur reçoit toujours les tâches dans l'ordre
+        if (ForkJoinPool.getCommonPoolParallelism() > 1 && Files.size(filePath) >= parallelThreshold) {
+            parallelReader.forEachIndexed(filePath, visitor);
+            return;
+        }
+        TimedInputStream in = new TimedInputStream(Files.newInputStream(filePath), "csv.read");
+        IndexedTodoVisitor timed = in.excluding(visitor);
+        try (CsvTodoReader reader = new CsvTodoReader(in)) {
+            Todo todo;
+            while ((todo = reader.next()) != null) {
+                timed.visit(reader.recordOffset(), todo);
+            }
+        }
+    }
+
+    /**
+     * Le fichier n'est modifié que par ajout : on lit à partir de la position retenue, jusqu'au
+     * dernier enregistrement complet. Un fichier plus court qu'avant a été réécrit : il est relu.
+     */
+    @Override
+    public Cursor readFrom(Path filePath, Cursor cursor, TodoVisitor visitor) throws IOException {
+        if (!Files.exists(filePath)) {
+            return Cursor.START;
+        }
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long from = cursor.offset();
+            long skip = 0;
+            if (size < from) {
+                from = 0;
+                skip = cursor.count();
+            }
+            long end = ParallelCsvReader.lastRecordEnd(channel, from, size);
+            long count = from == 0 ? 0 : cursor.count();
+            try (CsvTodoReader reader = new CsvTodoReader(new FileRangeInputStream(channel, from, end), from)) {
+                Todo todo;
+                while ((todo = reader.next()) != null) {
+                    if (count++ >= skip) {
+                        visitor.visit(todo);
+                    }
+                }
+            }
+            return new Cursor(end, count, 0);
+        }
+    }
+
+    @Override
+    public void readAt(Path filePath, long[] offsets, TodoVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+             CsvTodoReader reader = new CsvTodoReader(channel, SEEK_BUFFER_SIZE)) {
+            for (long offset : offsets) {
+                reader.seek(offset);
+                Todo todo = reader.next();
+                if (todo == null) {
+                    throw new IOException("No todo at offset " + offset + " in " + filePath);
+                }
+                visitor.visit(todo);
+            }
+        }
+    }
+
+    /**
+     * Écrit l'enregistrement CSV d'une tâche, retour à la ligne compris.
+     */
+    static void writeTodo(Writer writer, Todo todo) throws IOException {
+        writeQuoted(writer, todo.task());
+        writer.write(todo.done() ? ",true\n" : ",false\n");
+    }
+
+    /**
+     * Écrit la tâche entre guillemets en doublant les guillemets internes (RFC 4180),
+     * ce qui protège les virgules et retours à la ligne du texte.
+     */
+    private static void writeQuoted(Writer writer, String task) throws IOException {
+        writer.write('"');
+        if (task != null) {
+            int start = 0;
+            int quote;
+            while ((quote = task.indexOf('"', start)) != -1) {
+                writer.write(task, start, quote + 1 - start);
+                writer.write('"');
+                start = quote + 1;
+            }
+            writer.write(task, start, task.length() - start);
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,185 @@
+package com.fges.todoapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lecteur CSV en flux pour les lignes "tâche,done" (RFC 4180).
+ * Le texte est analysé octet par octet dans un tampon réutilisé : les caractères de structure
+ * sont tous ASCII, on ne décode en UTF-8 que le texte de la tâche.
+ */
+final class CsvTodoReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final Todo UNKNOWN_TODO = new Todo("Unknown Task", false);
+
+    private final InputStream in;
+    private final FileChannel channel;
+    private final byte[] buffer;
+    private int bufferPosition;
+    private int bufferLimit;
+    private long offset;
+    private long recordOffset;
+
+    private byte[] task = new byte[256];
+    private int taskLength;
+
+    CsvTodoReader(InputStream in) {
+        this(in, 0);
+    }
+
+    /**
+     * @param startOffset position dans le fichier du premier octet de {@code in}
+     */
+    CsvTodoReader(InputStream in, long startOffset) {
+        this.in = in;
+        this.channel = null;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.offset = startOffset;
+    }
+
+    /**
+     * Lecteur positionnable sur un fichier ouvert, voir {@link #seek(long)}.
+     */
+    CsvTodoReader(FileChannel channel, int bufferSize) throws IOException {
+        this.in = Channels.newInputStream(channel);
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.offset = channel.position();
+    }
+
+    /**
+     * Déplace la lecture sur la position donnée, en restant dans le tampon quand c'est possible.
+     */
+    void seek(long target) throws IOException {
+        if (target >= offset && target - offset <= bufferLimit - bufferPosition) {
+            bufferPosition += (int) (target - offset);
+        } else if (channel != null) {
+            channel.position(target);
+            bufferPosition = 0;
+            bufferLimit = 0;
+        } else {
+            throw new IOException("Cannot seek backwards in a CSV stream");
+        }
+        offset = target;
+    }
+
+    /**
+     * Position dans le fichier du premier octet de la dernière tâche retournée.
+     */
+    long recordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * Position dans le fichier juste après la dernière tâche retournée.
+     */
+    long position() {
+        return offset;
+    }
+
+    /**
+     * Lit la tâche suivante, ou retourne null en fin de flux. Les lignes vides sont ignorées.
+     */
+    Todo next() throws IOException {
+        int b = read();
+        while (b == '\n' || b == '\r') {
+            b = read();
+        }
+        if (b == -1) {
+            return null;
+        }
+        recordOffset = offset - 1;
+        taskLength = 0;
+
+        b = b == '"' ? readQuotedTask() : readUnquotedTask(b);
+        if (b != ',') {
+            // Ligne sans colonne "done" : même repli que l'ancien analyseur
+            return UNKNOWN_TODO;
+        }
+        return new Todo(new String(task, 0, taskLength, StandardCharsets.UTF_8), readDone());
+    }
+
+    /**
+     * Lit un champ entre guillemets ; "" vaut un guillemet. Un guillemet isolé au milieu du
+     * texte (anciens fichiers non échappés) est conservé tel quel.
+     *
+     * @return le séparateur qui suit le champ : ',', '\n', '\r' ou -1
+     */
+    private int readQuotedTask() throws IOException {
+        while (true) {
+            int b = read();
+            if (b == -1) {
+                return -1;
+            }
+            if (b != '"') {
+                appendTask(b);
+                continue;
+            }
+            int next = read();
+            if (next == ',' || next == '\n' || next == '\r' || next == -1) {
+                return next;
+            }
+            appendTask('"');
+            if (next != '"') {
+                appendTask(next);
+            }
+        }
+    }
+
+    private int readUnquotedTask(int b) throws IOException {
+        while (b != ',' && b != '\n' && b != '\r' && b != -1) {
+            appendTask(b);
+            b = read();
+        }
+        return b;
+    }
+
+    /**
+     * Lit la fin de la ligne et la compare à "true" sans tenir compte de la casse,
+     * comme Boolean.parseBoolean, sans créer de chaîne.
+     */
+    private boolean readDone() throws IOException {
+        int matched = 0;
+        boolean matches = true;
+        int b;
+        while ((b = read()) != '\n' && b != '\r' && b != -1) {
+            if (matches && matched < TRUE.length && (b | 0x20) == TRUE[matched]) {
+                matched++;
+            } else {
+                matches = false;
+            }
+        }
+        return matches && matched == TRUE.length;
+    }
+
+    private void appendTask(int b) {
+        if (taskLength == task.length) {
+            task = Arrays.copyOf(task, taskLength * 2);
+        }
+        task[taskLength++] = (byte) b;
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLimit) {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return -1;
+            }
+            bufferPosition = 0;
+            bufferLimit = read;
+        }
+        offset++;
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
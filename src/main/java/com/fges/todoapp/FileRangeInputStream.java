@@ -0,0 +1,40 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Lit les octets [from, to) d'un fichier par lectures positionnelles, sans déplacer la position
+ * du canal : plusieurs flux peuvent partager le même canal.
+ */
+final class FileRangeInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long to;
+    private long position;
+
+    FileRangeInputStream(FileChannel channel, long from, long to) {
+        this.channel = channel;
+        this.position = from;
+        this.to = to;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) <= 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= to) {
+            return -1;
+        }
+        int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, to - position)), position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+}
@@ -0,0 +1,31 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Gestionnaire capable de relire uniquement les tâches ajoutées depuis une lecture précédente,
+ * pour suivre un fichier avec list --follow.
+ */
+interface FollowableTodoFileManager extends TodoFileManager {
+
+    /**
+     * Position de lecture dans un fichier.
+     *
+     * @param offset position qui suit la dernière tâche lue
+     * @param count nombre de tâches lues depuis le début du fichier
+     * @param version version du fichier à laquelle {@code offset} se rapporte ; si le fichier a été
+     *                réécrit entre-temps, il est relu en sautant les {@code count} premières tâches
+     */
+    record Cursor(long offset, long count, long version) {
+        static final Cursor START = new Cursor(0, 0, -1);
+    }
+
+    /**
+     * Transmet les tâches complètes ajoutées depuis {@code cursor} ; une écriture en cours
+     * sera lue à l'appel suivant.
+     *
+     * @return la position à redonner à l'appel suivant
+     */
+    Cursor readFrom(Path filePath, Cursor cursor, TodoVisitor visitor) throws IOException;
+}
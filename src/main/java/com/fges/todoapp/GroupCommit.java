@@ -0,0 +1,107 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Regroupe les insertions concurrentes sur un même fichier. Le premier thread qui arrive
+ * écrit sa tâche ; ceux qui arrivent pendant cette écriture attendent, puis l'un d'eux
+ * écrit toutes les tâches en attente dans une seule session d'écriture (un seul verrou,
+ * une seule synchronisation disque).
+ */
+final class GroupCommit {
+    private static final ConcurrentHashMap<Path, GroupCommit> GROUPS = new ConcurrentHashMap<>();
+
+    private static final class Pending {
+        private final Todo todo;
+        private boolean committed;
+        private Exception error;
+
+        Pending(Todo todo) {
+            this.todo = todo;
+        }
+    }
+
+    private final Path path;
+    private List<Pending> queue = new ArrayList<>();
+    private boolean flushing;
+
+    private GroupCommit(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Ajoute la tâche au fichier et ne rend la main qu'une fois le lot qui la contient écrit.
+     */
+    static void insert(TodoFileManager manager, Path filePath, Todo todo) throws IOException {
+        Path path = filePath.toAbsolutePath().normalize();
+        GROUPS.computeIfAbsent(path, GroupCommit::new).commit(manager, filePath, todo);
+    }
+
+    private void commit(TodoFileManager manager, Path filePath, Todo todo) throws IOException {
+        Pending pending = new Pending(todo);
+        List<Pending> batch;
+        synchronized (this) {
+            queue.add(pending);
+            boolean interrupted = false;
+            while (flushing && !pending.committed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    if (queue.remove(pending)) {
+                        // La tâche n'est pas encore dans un lot : elle ne sera pas écrite
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for group commit on " + filePath);
+                    }
+                    // Déjà dans le lot en cours d'écriture : on attend son résultat pour le rapporter
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (pending.committed) {
+                rethrow(pending.error);
+                return;
+            }
+            flushing = true;
+            batch = queue;
+            queue = new ArrayList<>();
+        }
+
+        Exception error = null;
+        try (TodoWriter writer = manager.openWriter(filePath)) {
+            for (Pending p : batch) {
+                writer.write(p.todo);
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            for (Pending p : batch) {
+                p.committed = true;
+                p.error = error;
+            }
+            flushing = false;
+            if (queue.isEmpty()) {
+                GROUPS.remove(path, this);
+            }
+            notifyAll();
+        }
+        rethrow(error);
+    }
+
+    private static void rethrow(Exception error) throws IOException {
+        if (error instanceof IOException e) {
+            throw e;
+        }
+        if (error instanceof RuntimeException e) {
+            throw e;
+        }
+    }
+}
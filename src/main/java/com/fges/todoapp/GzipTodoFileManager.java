@@ -0,0 +1,181 @@
+package com.fges.todoapp;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gestionnaire des fichiers compressés ".json.gz" et ".csv.gz" : le fichier est décompressé au fil
+ * de la lecture, directement dans l'analyseur du format, sans jamais être chargé en entier.
+ * <p>
+ * Une session d'écriture produit un fichier temporaire qui remplace l'ancien par renommage atomique.
+ * En CSV, les octets compressés existants sont recopiés tels quels et les nouvelles lignes forment
+ * un membre gzip de plus. En JSON, le tableau existant est décompressé et recopié élément par élément
+ * avant les nouvelles tâches, en une seule passe. Ces fichiers n'ont ni index ni journal : le format
+ * vise les archives, qu'on lit beaucoup et complète rarement.
+ */
+final class GzipTodoFileManager implements TodoFileManager {
+    static final String SUFFIX = ".gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * Format du contenu décompressé.
+     */
+    enum Format {
+        JSON, CSV
+    }
+
+    private final Format format;
+
+    GzipTodoFileManager(Format format) {
+        this.format = format;
+    }
+
+    @Override
+    public TodoWriter openWriter(Path filePath) throws IOException {
+        return new GzipTodoWriter(filePath);
+    }
+
+    @Override
+    public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+        if (!Files.exists(filePath) || Files.size(filePath) == 0) {
+            return;
+        }
+        String metric = format == Format.JSON ? "json.gz.read" : "csv.gz.read";
+        // Le flux brut est fermé même si l'en-tête gzip est invalide
+        try (TimedInputStream raw = new TimedInputStream(Files.newInputStream(filePath), metric)) {
+            InputStream in = new GZIPInputStream(raw, BUFFER_SIZE);
+            IndexableTodoFileManager.IndexedTodoVisitor timed = raw.excluding((offset, todo) -> visitor.visit(todo));
+            if (format == Format.CSV) {
+                try (CsvTodoReader reader = new CsvTodoReader(in)) {
+                    Todo todo;
+                    while ((todo = reader.next()) != null) {
+                        timed.visit(reader.recordOffset(), todo);
+                    }
+                }
+            } else {
+                try (JsonParser parser = FACTORY.createParser(in)) {
+                    JsonFileManager.forEachInArray(parser, timed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Écrit la nouvelle version du fichier dans "&lt;fichier&gt;.tmp", sous le verrou du fichier,
+     * et la met en place à la fermeture.
+     */
+    private final class GzipTodoWriter implements TodoWriter {
+        private final FileChannel channel;
+        private final TodoFileLock lock;
+        private final ReplacementFile replacement;
+        private final GZIPOutputStream out;
+        private final Writer csv;
+        private final JsonGenerator json;
+        private boolean committed;
+
+        GzipTodoWriter(Path filePath) throws IOException {
+            lock = TodoFileLock.openLocked(filePath);
+            channel = lock.channel();
+            ReplacementFile opened = null;
+            try {
+                opened = new ReplacementFile(filePath);
+                FileChannel target = opened.channel();
+                long size = channel.size();
+                if (format == Format.CSV) {
+                    // Des membres gzip mis bout à bout forment un fichier gzip valide : pas besoin de décompresser
+                    long copied = 0;
+                    while (copied < size) {
+                        copied += channel.transferTo(copied, size - copied, target);
+                    }
+                    out = new GZIPOutputStream(new BufferedOutputStream(Channels.newOutputStream(target), BUFFER_SIZE), BUFFER_SIZE);
+                    csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+                    json = null;
+                } else {
+                    out = new GZIPOutputStream(new BufferedOutputStream(Channels.newOutputStream(target), BUFFER_SIZE), BUFFER_SIZE);
+                    csv = null;
+                    json = FACTORY.createGenerator(out);
+                    json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    json.writeStartArray();
+                    if (size > 0) {
+                        copyArray(size);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                ReplacementFile created = opened;
+                try (lock; created) {
+                    throw e;
+                }
+            }
+            replacement = opened;
+        }
+
+        /**
+         * Recopie les éléments du tableau existant, lu à travers le canal verrouillé : rouvrir puis
+         * fermer le fichier libérerait le verrou POSIX. Un contenu qui n'est pas un tableau est remplacé.
+         */
+        private void copyArray(long size) throws IOException {
+            try (InputStream raw = new FileRangeInputStream(channel, 0, size);
+                    JsonParser parser = FACTORY.createParser(new GZIPInputStream(raw, BUFFER_SIZE))) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    return;
+                }
+                JsonToken token;
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                    json.copyCurrentStructure(parser);
+                }
+            }
+        }
+
+        @Override
+        public void write(Todo todo) throws IOException {
+            if (csv != null) {
+                CsvFileManager.writeTodo(csv, todo);
+                return;
+            }
+            json.writeStartObject();
+            json.writeStringField("task", todo.task());
+            json.writeBooleanField("done", todo.done());
+            json.writeEndObject();
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (committed) {
+                return;
+            }
+            if (csv != null) {
+                csv.flush();
+            } else {
+                json.writeEndArray();
+                json.close();
+            }
+            out.finish();
+            out.flush();
+            replacement.commit();
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (lock; replacement) {
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Gestionnaire dont les tâches peuvent être relues directement à partir de leur position
+ * dans le fichier, ce qui permet de les indexer avec {@link TodoIndex}.
+ */
+interface IndexableTodoFileManager extends TodoFileManager {
+
+    /**
+     * Reçoit chaque tâche avec la position de son premier octet dans le fichier.
+     */
+    @FunctionalInterface
+    interface IndexedTodoVisitor {
+        void visit(long offset, Todo todo) throws IOException;
+    }
+
+    void forEachIndexed(Path filePath, IndexedTodoVisitor visitor) throws IOException;
+
+    /**
+     * Relit les tâches situées aux positions données, dans l'ordre croissant des positions.
+     */
+    void readAt(Path filePath, long[] offsets, TodoVisitor visitor) throws IOException;
+
+    /**
+     * Utilise l'index des tâches terminées quand il existe à côté du fichier.
+     */
+    @Override
+    default void list(Path filePath, boolean onlyDone) throws IOException {
+        if (onlyDone && TodoIndex.listDone(this, filePath, false)) {
+            return;
+        }
+        TodoFileManager.super.list(filePath, onlyDone);
+    }
+
+    @Override
+    default void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+        forEachIndexed(filePath, (offset, todo) -> visitor.visit(todo));
+    }
+}
@@ -0,0 +1,454 @@
+package com.fges.todoapp;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gestionnaire de fichiers pour le format JSON.
+ * <p>
+ * Les insertions sont ajoutées au journal {@link JsonWriteAheadLog} ; quand il devient trop gros
+ * par rapport au fichier principal, il y est compacté : le tableau complet est écrit dans un fichier
+ * temporaire qui remplace le fichier principal par un renommage atomique. Un arrêt brutal ne peut
+ * donc laisser qu'une dernière ligne de journal incomplète, ignorée à la lecture.
+ * Les positions des tâches du journal sont comptées après la fin du fichier principal.
+ */
+class JsonFileManager implements IndexableTodoFileManager, FollowableTodoFileManager {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+    private static final int COMPACTION_RATIO = 4;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public TodoWriter openWriter(Path filePath) throws IOException {
+        return new JsonTodoWriter(filePath, false);
+    }
+
+    /**
+     * Compacte le journal dans le fichier principal, même s'il est encore petit.
+     */
+    void compact(Path filePath) throws IOException {
+        new JsonTodoWriter(filePath, true).close();
+    }
+
+    /**
+     * Parcourt le tableau JSON token par token et transmet chaque tâche dès qu'elle est lue,
+     * sans construire l'arbre complet en mémoire, puis les tâches du journal.
+     */
+    @Override
+    public void forEachIndexed(Path filePath, IndexedTodoVisitor visitor) throws IOException {
+        readSnapshot(filePath, (channel, attributes, wal, entries) -> {
+            forEachInMain(channel, visitor);
+            if (entries != null) {
+                forEachInLog(wal, entries.start(), entries.end(), attributes.size(), visitor);
+            }
+        });
+    }
+
+    /**
+     * Entre deux compactions, seul le journal grandit : on n'en lit que la fin. Après une compaction,
+     * le nouveau fichier commence par les tâches déjà lues, qui sont sautées.
+     */
+    @Override
+    public Cursor readFrom(Path filePath, Cursor cursor, TodoVisitor visitor) throws IOException {
+        Cursor[] next = {Cursor.START};
+        readSnapshot(filePath, (channel, attributes, wal, entries) -> {
+            long version = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            long mainSize = attributes.size();
+            long logEnd = entries == null ? 0 : entries.end();
+            long[] count = {0};
+            if (version == cursor.version() && cursor.offset() >= mainSize) {
+                count[0] = cursor.count();
+                if (entries != null) {
+                    long from = Math.max(entries.start(), cursor.offset() - mainSize);
+                    forEachInLog(wal, from, logEnd, mainSize, (offset, todo) -> {
+                        count[0]++;
+                        visitor.visit(todo);
+                    });
+                }
+            } else {
+                IndexedTodoVisitor skipping = (offset, todo) -> {
+                    if (count[0]++ >= cursor.count()) {
+                        visitor.visit(todo);
+                    }
+                };
+                forEachInMain(channel, skipping);
+                if (entries != null) {
+                    forEachInLog(wal, entries.start(), logEnd, mainSize, skipping);
+                }
+            }
+            next[0] = new Cursor(mainSize + logEnd, count[0], version);
+        });
+        return next[0];
+    }
+
+    /**
+     * Reçoit une version cohérente du fichier principal et de son journal.
+     */
+    @FunctionalInterface
+    private interface SnapshotReader {
+        /**
+         * @param entries entrées du journal qui complètent cette version, null s'il n'y en a pas
+         */
+        void read(FileChannel channel, BasicFileAttributes attributes, FileChannel wal,
+                  JsonWriteAheadLog.Entries entries) throws IOException;
+    }
+
+    private void readSnapshot(Path filePath, SnapshotReader reader) throws IOException {
+        Path walPath = JsonWriteAheadLog.pathOf(filePath);
+        while (true) {
+            // Journal ouvert avant le fichier principal : si une compaction a lieu entre les deux,
+            // l'en-tête du journal ne correspond plus et le nouveau fichier contient déjà ses tâches
+            try (FileChannel wal = JsonWriteAheadLog.openIfExists(walPath)) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    return;
+                }
+                try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                    if (channel.size() != attributes.size()) {
+                        // Fichier remplacé entre la lecture des attributs et l'ouverture : on recommence
+                        continue;
+                    }
+                    reader.read(channel, attributes, wal, wal == null ? null : JsonWriteAheadLog.entries(wal, attributes));
+                    return;
+                }
+            }
+        }
+    }
+
+    private void forEachInMain(FileChannel channel, IndexedTodoVisitor visitor) throws IOException {
+        TimedInputStream in = new TimedInputStream(Channels.newInputStream(channel), "json.read");
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            forEachInArray(parser, in.excluding(visitor));
+        }
+    }
+
+    static void forEachInArray(JsonParser parser, IndexedTodoVisitor visitor) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            return;
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            long offset = parser.currentTokenLocation().getByteOffset();
+            visitor.visit(offset, readTodoObject(parser));
+        }
+    }
+
+    private void forEachInLog(FileChannel wal, long from, long to, long mainSize, IndexedTodoVisitor visitor) throws IOException {
+        InputStream in = new FileRangeInputStream(wal, from, to);
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                long offset = mainSize + from + parser.currentTokenLocation().getByteOffset();
+                visitor.visit(offset, readTodoObject(parser));
+            }
+        }
+    }
+
+    @Override
+    public void readAt(Path filePath, long[] offsets, TodoVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+             FileChannel wal = JsonWriteAheadLog.openIfExists(JsonWriteAheadLog.pathOf(filePath))) {
+            long mainSize = channel.size();
+            for (long offset : offsets) {
+                FileChannel source = offset < mainSize ? channel : wal;
+                if (source == null) {
+                    throw new IOException("No todo at offset " + offset + " in " + filePath);
+                }
+                source.position(offset < mainSize ? offset : offset - mainSize);
+                try (JsonParser parser = mapper.getFactory().createParser(Channels.newInputStream(source))) {
+                    parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        throw new IOException("No todo at offset " + offset + " in " + filePath);
+                    }
+                    visitor.visit(readTodoObject(parser));
+                }
+            }
+        }
+    }
+
+    /**
+     * Lit l'objet dont le START_OBJECT vient d'être consommé ; les champs inconnus sont ignorés.
+     */
+    private static Todo readTodoObject(JsonParser parser) throws IOException {
+        String task = null;
+        boolean done = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("task".equals(field) && value.isScalarValue()) {
+                task = parser.getText();
+            } else if ("done".equals(field)) {
+                done = parser.getValueAsBoolean();
+            }
+            parser.skipChildren();
+        }
+        return new Todo(task, done);
+    }
+
+    /**
+     * Lit tout le fichier à travers le canal verrouillé : rouvrir puis fermer le fichier
+     * libérerait le verrou POSIX détenu par le processus.
+     */
+    private ArrayNode readTodosFromFile(FileChannel channel) throws IOException {
+        channel.position(0);
+        try (JsonParser parser = mapper.getFactory().createParser(Channels.newInputStream(channel))) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            JsonNode jsonNode = mapper.readTree(parser);
+            if (jsonNode != null && jsonNode.isArray()) {
+                return (ArrayNode) jsonNode;
+            }
+        }
+        return mapper.createArrayNode();
+    }
+
+    /**
+     * Retourne la position du ']' qui ferme le tableau racine, ou -1 si le fichier
+     * ne commence pas par '[' et ne se termine pas par ']'.
+     */
+    private long findClosingBracket(FileChannel channel) throws IOException {
+        long last = lastNonWhitespace(channel, channel.size());
+        if (last < 0 || byteAt(channel, last) != ']') {
+            return -1;
+        }
+        ByteBuffer head = ByteBuffer.allocate(64);
+        long position = 0;
+        while (position < last) {
+            head.clear();
+            int read = channel.read(head, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = head.get(i);
+                if (!isWhitespace(b)) {
+                    return b == '[' ? last : -1;
+                }
+            }
+            position += read;
+        }
+        return -1;
+    }
+
+    private long lastNonWhitespace(FileChannel channel, long before) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate(64);
+        long end = before;
+        while (end > 0) {
+            long start = Math.max(0, end - tail.capacity());
+            tail.clear().limit((int) (end - start));
+            while (tail.hasRemaining() && channel.read(tail, start + tail.position()) > 0) {
+                // lecture jusqu'à remplir le bloc
+            }
+            for (int i = tail.position() - 1; i >= 0; i--) {
+                if (!isWhitespace(tail.get(i))) {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    private byte byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer single = ByteBuffer.allocate(1);
+        channel.read(single, position);
+        return single.get(0);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Ajoute les tâches au journal du fichier ; à la fermeture, le journal est compacté dans le
+     * fichier principal s'il a atteint le quart de sa taille, ou si le fichier principal n'est pas
+     * encore un tableau.
+     */
+    private final class JsonTodoWriter implements TodoWriter {
+        private final Path filePath;
+        private final Path walPath;
+        private final FileChannel channel;
+        private final TodoFileLock lock;
+        private final long closingBracket;
+        private final FileChannel wal;
+        private final long entriesStart;
+        private final JsonGenerator generator;
+        private final boolean forceCompaction;
+        private boolean committed;
+        // Fichier principal mis en place par la compaction, verrouillé jusqu'à la fermeture
+        private ReplacementFile compacted;
+
+        JsonTodoWriter(Path filePath, boolean forceCompaction) throws IOException {
+            this.filePath = filePath;
+            this.walPath = JsonWriteAheadLog.pathOf(filePath);
+            this.forceCompaction = forceCompaction;
+            // Verrou du fichier en place : une compaction a pu le remplacer pendant qu'on attendait
+            lock = TodoFileLock.openLocked(filePath);
+            channel = lock.channel();
+            FileChannel log = null;
+            try {
+                closingBracket = findClosingBracket(channel);
+                BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+                log = openLog(walPath);
+                JsonWriteAheadLog.Entries entries = log == null ? null : JsonWriteAheadLog.entries(log, attributes);
+                if (entries == null) {
+                    // Pas de journal, ou journal d'une version précédente du fichier principal
+                    if (log != null) {
+                        log.close();
+                    }
+                    log = JsonWriteAheadLog.create(walPath, attributes);
+                    entriesStart = log.position();
+                } else {
+                    // Une dernière ligne incomplète vient d'une écriture interrompue
+                    log.truncate(entries.end());
+                    log.position(entries.end());
+                    entriesStart = entries.start();
+                }
+                generator = mapper.getFactory().createGenerator(new BufferedOutputStream(Channels.newOutputStream(log), BUFFER_SIZE));
+                generator.setRootValueSeparator(null);
+            } catch (IOException | RuntimeException e) {
+                FileChannel opened = log;
+                try (lock; opened) {
+                    throw e;
+                }
+            }
+            wal = log;
+        }
+
+        private FileChannel openLog(Path walPath) throws IOException {
+            try {
+                return FileChannel.open(walPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void write(Todo todo) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("task", todo.task());
+            generator.writeBooleanField("done", todo.done());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (lock; wal) {
+                try {
+                    commit();
+                } finally {
+                    if (compacted != null) {
+                        compacted.close();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (committed) {
+                return;
+            }
+            generator.flush();
+            wal.force(false);
+            long logSize = wal.size() - entriesStart;
+            if (forceCompaction || closingBracket < 0
+                    || logSize >= Math.max(MIN_COMPACTION_SIZE, channel.size() / COMPACTION_RATIO)) {
+                compact();
+            }
+            committed = true;
+        }
+
+        /**
+         * Écrit le tableau complet dans un fichier temporaire qui remplace le fichier principal.
+         * Un arrêt avant le renommage laisse le fichier principal et le journal intacts ; un arrêt
+         * après laisse un journal périmé, ignoré puisque le fichier principal a changé.
+         */
+        private void compact() throws IOException {
+            ReplacementFile replacement = new ReplacementFile(filePath);
+            try {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(replacement.channel()), BUFFER_SIZE);
+                boolean isEmptyArray;
+                if (closingBracket >= 0) {
+                    // Le début du tableau est recopié octet par octet, jusqu'au ']' final exclu
+                    copy(channel, 0, closingBracket, out, false);
+                    isEmptyArray = byteAt(channel, lastNonWhitespace(channel, closingBracket)) == '[';
+                } else {
+                    // Fichier vide ou qui ne contient pas un tableau : on réécrit tout, comme avant
+                    ArrayNode existing = readTodosFromFile(channel);
+                    out.write('[');
+                    isEmptyArray = existing.isEmpty();
+                    for (int i = 0; i < existing.size(); i++) {
+                        if (i > 0) {
+                            out.write(',');
+                        }
+                        out.write(mapper.writeValueAsBytes(existing.get(i)));
+                    }
+                }
+                long entriesEnd = wal.size();
+                if (entriesEnd > entriesStart) {
+                    if (!isEmptyArray) {
+                        out.write(',');
+                    }
+                    // Une ligne par objet : chaque retour à la ligne devient le séparateur du tableau
+                    copy(wal, entriesStart, entriesEnd - 1, out, true);
+                }
+                out.write(']');
+                out.flush();
+                replacement.commit();
+                // Le nouveau fichier est verrouillé : aucun écrivain n'a pu créer de journal entre-temps
+                Files.deleteIfExists(walPath);
+            } catch (IOException | RuntimeException e) {
+                try (replacement) {
+                    throw e;
+                }
+            }
+            compacted = replacement;
+        }
+
+        private void copy(FileChannel source, long from, long to, OutputStream out, boolean newlinesAsCommas) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = from;
+            while (position < to) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+                int read = source.read(buffer, position);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of " + filePath + " during compaction");
+                }
+                byte[] bytes = buffer.array();
+                if (newlinesAsCommas) {
+                    for (int i = 0; i < read; i++) {
+                        if (bytes[i] == '\n') {
+                            bytes[i] = ',';
+                        }
+                    }
+                }
+                out.write(bytes, 0, read);
+                position += read;
+            }
+        }
+    }
+}
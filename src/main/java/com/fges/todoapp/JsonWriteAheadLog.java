@@ -0,0 +1,152 @@
+package com.fges.todoapp;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal ".wal" placé à côté d'un fichier JSON : chaque insertion y est ajoutée sur une ligne
+ * au lieu de modifier le tableau, puis le journal est compacté dans le fichier principal.
+ *
+ * <pre>
+ * {"base":taille du fichier principal,"modified":date de modification en ns}
+ * {"task":"...","done":false}
+ * ...
+ * </pre>
+ *
+ * L'en-tête désigne la version du fichier principal que le journal complète : après une compaction
+ * ou une modification externe du fichier principal, le journal est périmé et ignoré.
+ * Une dernière ligne sans retour à la ligne (écriture interrompue) est ignorée elle aussi.
+ */
+final class JsonWriteAheadLog {
+    static final String SUFFIX = ".wal";
+    private static final int MAX_HEADER_SIZE = 128;
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private JsonWriteAheadLog() {
+    }
+
+    /**
+     * Lignes complètes du journal, entre la fin de l'en-tête et le dernier retour à la ligne.
+     */
+    record Entries(long start, long end) {
+        boolean isEmpty() {
+            return start == end;
+        }
+    }
+
+    static Path pathOf(Path filePath) {
+        return filePath.resolveSibling(filePath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Ouvre le journal en lecture, ou retourne null s'il n'existe pas.
+     */
+    static FileChannel openIfExists(Path walPath) throws IOException {
+        try {
+            return FileChannel.open(walPath, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param main attributs de la version du fichier principal lue en même temps que le journal
+     * @return les entrées du journal, ou null si le journal ne complète pas cette version
+     */
+    static Entries entries(FileChannel wal, BasicFileAttributes main) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MAX_HEADER_SIZE);
+        while (head.hasRemaining() && wal.read(head, head.position()) > 0) {
+            // lecture jusqu'à remplir le bloc
+        }
+        int headerEnd = -1;
+        for (int i = 0; i < head.position(); i++) {
+            if (head.get(i) == '\n') {
+                headerEnd = i + 1;
+                break;
+            }
+        }
+        if (headerEnd < 0 || !matches(head.array(), headerEnd, main)) {
+            return null;
+        }
+        return new Entries(headerEnd, Math.max(headerEnd, lastLineEnd(wal)));
+    }
+
+    private static boolean matches(byte[] header, int length, BasicFileAttributes main) throws IOException {
+        long base = -1;
+        long modified = -1;
+        try (JsonParser parser = FACTORY.createParser(header, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("base".equals(field)) {
+                    base = parser.getValueAsLong(-1);
+                } else if ("modified".equals(field)) {
+                    modified = parser.getValueAsLong(-1);
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // En-tête illisible : journal périmé
+            return false;
+        }
+        return base == main.size() && modified == main.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Position juste après le dernier retour à la ligne du journal, 0 s'il n'y en a pas.
+     */
+    private static long lastLineEnd(FileChannel wal) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate(4096);
+        long end = wal.size();
+        while (end > 0) {
+            long start = Math.max(0, end - tail.capacity());
+            tail.clear().limit((int) (end - start));
+            while (tail.hasRemaining() && wal.read(tail, start + tail.position()) > 0) {
+                // lecture jusqu'à remplir le bloc
+            }
+            for (int i = tail.position() - 1; i >= 0; i--) {
+                if (tail.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Remplace le journal par un journal vide qui complète la version donnée du fichier principal.
+     * Le renommage laisse intact l'ancien journal pour les lecteurs qui l'ont déjà ouvert.
+     *
+     * @return le nouveau journal, ouvert en écriture et positionné après l'en-tête
+     */
+    static FileChannel create(Path walPath, BasicFileAttributes main) throws IOException {
+        byte[] header = ("{\"base\":" + main.size() + ",\"modified\":" + main.lastModifiedTime().to(TimeUnit.NANOSECONDS) + "}\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        Path tmp = walPath.resolveSibling(walPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(header));
+            channel.force(false);
+        }
+        Files.move(tmp, walPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel channel = FileChannel.open(walPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+}
@@ -0,0 +1,216 @@
+package com.fges.todoapp;
+
+import fr.anthonyquere.dumbcrud.Metrics;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lecture d'un gros fichier CSV en parallèle : le fichier est découpé en tranches qui commencent
+ * chacune sur un début de ligne, analysées par {@link CsvTodoReader} sur un ForkJoinPool puis
+ * transmises au visiteur dans l'ordre du fichier.
+ * <p>
+ * Un retour à la ligne peut se trouver dans une tâche entre guillemets : une position ne suffit pas
+ * à savoir si on est dans un champ. Chaque tranche fait donc avancer en parallèle l'automate de
+ * l'analyseur depuis ses quatre états possibles, jusqu'à ce qu'ils se rejoignent (en général à la
+ * première fin de ligne) ; à partir de là l'état ne dépend plus de ce qui précède, et le premier
+ * début de ligne suivant est une vraie frontière d'enregistrement.
+ */
+final class ParallelCsvReader {
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    // États de l'automate de CsvTodoReader, avant chaque octet
+    private static final int LINE_START = 0;
+    private static final int PLAIN = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_SEEN = 3;
+    private static final int STATES = 4;
+
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    ParallelCsvReader(int chunkSize, ForkJoinPool pool) {
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Tâches d'une tranche, dans l'ordre, avec leurs positions.
+     */
+    private record Chunk(long[] offsets, Todo[] todos, int count) {
+    }
+
+    void forEachIndexed(Path filePath, IndexableTodoFileManager.IndexedTodoVisitor visitor) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long[] boundaries = recordBoundaries(channel, channel.size());
+
+            // Au plus deux tranches par cœur en mémoire : les suivantes attendent que le visiteur avance
+            int window = Math.max(2, pool.getParallelism() * 2);
+            Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+            int next = 0;
+            try {
+                while (next < boundaries.length - 1 || !pending.isEmpty()) {
+                    while (next < boundaries.length - 1 && pending.size() < window) {
+                        long from = boundaries[next];
+                        long to = boundaries[next + 1];
+                        pending.add(pool.submit(() -> parse(channel, from, to)));
+                        next++;
+                    }
+                    Chunk chunk = join(pending.removeFirst());
+                    for (int i = 0; i < chunk.count(); i++) {
+                        visitor.visit(chunk.offsets()[i], chunk.todos()[i]);
+                    }
+                }
+            } finally {
+                pending.forEach(task -> task.cancel(false));
+            }
+        }
+        Metrics.INSTANCE.recordSince("csv.read.parallel", start);
+    }
+
+    /**
+     * Débuts d'enregistrement qui délimitent les tranches, suivis de la taille du fichier.
+     * Une tranche dans laquelle l'automate ne se resynchronise pas (un champ entre guillemets plus long
+     * que la tranche) est fusionnée avec la précédente.
+     */
+    private long[] recordBoundaries(FileChannel channel, long size) throws IOException {
+        List<ForkJoinTask<Long>> scans = new ArrayList<>();
+        for (long chunkStart = chunkSize; chunkStart < size; chunkStart += chunkSize) {
+            long from = chunkStart;
+            long to = Math.min(size, chunkStart + chunkSize);
+            scans.add(pool.submit(() -> firstRecordStart(channel, from, to)));
+        }
+        long[] boundaries = new long[scans.size() + 2];
+        int count = 0;
+        boundaries[count++] = 0;
+        for (ForkJoinTask<Long> scan : scans) {
+            long boundary = join(scan);
+            if (boundary >= 0) {
+                boundaries[count++] = boundary;
+            }
+        }
+        boundaries[count++] = size;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * Premier début de ligne de [from, to) qui ne dépend pas de l'état de l'analyseur en {@code from},
+     * ou -1 s'il n'y en a pas.
+     */
+    static long firstRecordStart(FileChannel channel, long from, long to) {
+        int[] states = {LINE_START, PLAIN, QUOTED, QUOTE_SEEN};
+        boolean converged = false;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        try {
+            while (position < to) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    return -1;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (converged && states[0] == LINE_START) {
+                        return position + i;
+                    }
+                    int b = buffer.get(i) & 0xFF;
+                    if (converged) {
+                        states[0] = next(states[0], b);
+                        continue;
+                    }
+                    for (int s = 0; s < STATES; s++) {
+                        states[s] = next(states[s], b);
+                    }
+                    converged = states[0] == states[1] && states[1] == states[2] && states[2] == states[3];
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return -1;
+    }
+
+    /**
+     * Fin du dernier enregistrement complet de [from, to), {@code from} étant un début d'enregistrement :
+     * un enregistrement dont le retour à la ligne final n'est pas encore écrit en est exclu.
+     */
+    static long lastRecordEnd(FileChannel channel, long from, long to) throws IOException {
+        int state = LINE_START;
+        long end = from;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        while (position < to) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                state = next(state, buffer.get(i) & 0xFF);
+                if (state == LINE_START) {
+                    end = position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * Même découpage que {@link CsvTodoReader#next()} : seul le champ tâche peut être entre guillemets,
+     * "" y vaut un guillemet et un guillemet isolé y est conservé.
+     */
+    private static int next(int state, int b) {
+        boolean endOfLine = b == '\n' || b == '\r';
+        switch (state) {
+            case LINE_START:
+                return endOfLine ? LINE_START : b == '"' ? QUOTED : PLAIN;
+            case PLAIN:
+                return endOfLine ? LINE_START : PLAIN;
+            case QUOTED:
+                return b == '"' ? QUOTE_SEEN : QUOTED;
+            default:
+                return endOfLine ? LINE_START : b == ',' ? PLAIN : QUOTED;
+        }
+    }
+
+    private static Chunk parse(FileChannel channel, long from, long to) {
+        long[] offsets = new long[1024];
+        Todo[] todos = new Todo[1024];
+        int count = 0;
+        try (CsvTodoReader reader = new CsvTodoReader(new FileRangeInputStream(channel, from, to), from)) {
+            Todo todo;
+            while ((todo = reader.next()) != null) {
+                if (count == todos.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                    todos = Arrays.copyOf(todos, count * 2);
+                }
+                offsets[count] = reader.recordOffset();
+                todos[count++] = todo;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Chunk(offsets, todos, count);
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
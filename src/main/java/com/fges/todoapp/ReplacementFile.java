@@ -0,0 +1,63 @@
+package com.fges.todoapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Nouvelle version d'un fichier, écrite dans "&lt;fichier&gt;.tmp" puis mise en place par renommage
+ * atomique : un arrêt avant {@link #commit()} laisse l'ancienne version intacte. La nouvelle version
+ * est verrouillée avant d'être mise en place, jusqu'à {@link #close()} : un écrivain d'un autre
+ * processus ne peut pas la modifier avant que la session qui l'a produite soit terminée.
+ */
+final class ReplacementFile implements Closeable {
+    private final Path target;
+    private final Path tmp;
+    private final FileChannel channel;
+    private FileLock lock;
+
+    ReplacementFile(Path target) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Force le contenu sur le disque, puis remplace le fichier cible.
+     */
+    void commit() throws IOException {
+        channel.force(true);
+        FileLock locked = channel.lock();
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            locked.release();
+            throw e;
+        }
+        lock = locked;
+    }
+
+    /**
+     * Déverrouille le fichier mis en place, ou supprime le fichier temporaire s'il ne l'a pas été.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            if (lock == null) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.fges.todoapp;
+
+import fr.anthonyquere.dumbcrud.Metrics;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Source partitionnée en plusieurs fichiers de tâches ("shards") : un dossier, ou un motif glob
+ * sur le nom de fichier comme {@code data/todos-*.csv}. Les fichiers, éventuellement compressés, peuvent être de formats
+ * différents ; chacun est lu et écrit par le gestionnaire de son extension.
+ * <p>
+ * Les fichiers sont ordonnés par nom, les nombres comparés par valeur : la liste des tâches est
+ * la concaténation des fichiers dans cet ordre. Les lectures se font en parallèle, par paquets
+ * de tâches en nombre borné, et les tâches sont transmises au visiteur dans l'ordre. Les ajouts vont dans le dernier fichier jusqu'à ce
+ * qu'il atteigne la taille maximale, puis dans un nouveau fichier au numéro suivant.
+ */
+final class ShardedTodoFileManager implements TodoFileManager {
+    static final long DEFAULT_MAX_SHARD_SIZE = 64L * 1024 * 1024;
+    private static final String FIRST_SHARD = "todos-00001.json";
+    private static final String FIRST_NUMBER = "00001";
+    // Octets d'un enregistrement en plus du texte (guillemets, "done", séparateurs...)
+    private static final int RECORD_OVERHEAD = 24;
+    // Extensions des fichiers de tâches, les composées avant celles qu'elles contiennent
+    private static final List<String> EXTENSIONS = List.of(".json.gz", ".csv.gz", ".json", ".csv", ".todo");
+    // Tâches par paquet transmis au visiteur, et paquets d'avance par fichier
+    private static final int CHUNK_SIZE = 1024;
+    private static final int QUEUED_CHUNKS = 4;
+    private static final List<Todo> END = new ArrayList<>();
+
+    private final Function<Path, TodoFileManager> managers;
+    private final long maxShardSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param managers gestionnaire de chaque fichier, selon son chemin
+     */
+    ShardedTodoFileManager(Function<Path, TodoFileManager> managers) {
+        this(managers, DEFAULT_MAX_SHARD_SIZE, ForkJoinPool.commonPool());
+    }
+
+    ShardedTodoFileManager(Function<Path, TodoFileManager> managers, long maxShardSize, ForkJoinPool pool) {
+        this.managers = managers;
+        this.maxShardSize = maxShardSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Un dossier, ou un chemin dont le nom de fichier contient un motif glob.
+     */
+    static boolean isShardedSource(Path source) {
+        Path name = source.getFileName();
+        return isDirectorySource(source) || name != null && isPattern(name.toString());
+    }
+
+    private static boolean isDirectorySource(Path source) {
+        return Files.isDirectory(source);
+    }
+
+    private static boolean isPattern(String name) {
+        return name.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    /**
+     * Fichiers de la source, dans l'ordre des tâches.
+     */
+    static List<Path> shards(Path source) throws IOException {
+        Path directory = directoryOf(source);
+        PathMatcher matcher = isDirectorySource(source) ? null
+                : source.getFileSystem().getPathMatcher("glob:" + source.getFileName());
+        List<Path> shards = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return shards;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if ((matcher == null || matcher.matches(entry.getFileName())) && isShard(entry)) {
+                    shards.add(entry);
+                }
+            }
+        }
+        shards.sort(Comparator.comparing(path -> path.getFileName().toString(), ShardedTodoFileManager::compareNames));
+        return shards;
+    }
+
+    /**
+     * Version de chaque fichier de la source, dans l'ordre : change dès qu'un fichier est ajouté,
+     * supprimé ou modifié.
+     */
+    static List<TodoCache.Key> versionOf(Path source) throws IOException {
+        List<TodoCache.Key> version = new ArrayList<>();
+        for (Path shard : shards(source)) {
+            TodoCache.Key key = TodoCache.Key.of(shard);
+            if (key != null) {
+                version.add(key);
+            }
+        }
+        return version;
+    }
+
+    private static Path directoryOf(Path source) {
+        if (isDirectorySource(source)) {
+            return source;
+        }
+        Path parent = source.toAbsolutePath().getParent();
+        return parent == null ? source.toAbsolutePath() : parent;
+    }
+
+    /**
+     * Fichier de tâches, à l'exclusion des fichiers annexes (journal, index, fichiers temporaires).
+     */
+    private static boolean isShard(Path path) {
+        return extensionOf(path.getFileName().toString()) != null && Files.isRegularFile(path);
+    }
+
+    private static String extensionOf(String name) {
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return extension;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ordre des noms de fichiers où les suites de chiffres sont comparées par valeur ("todos-10" après "todos-9").
+     */
+    static int compareNames(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                int endA = endOfDigits(a, i);
+                int endB = endOfDigits(b, j);
+                String digitsA = stripLeadingZeros(a.substring(i, endA));
+                String digitsB = stripLeadingZeros(b.substring(j, endB));
+                int comparison = digitsA.length() != digitsB.length()
+                        ? Integer.compare(digitsA.length(), digitsB.length()) : digitsA.compareTo(digitsB);
+                if (comparison != 0) {
+                    return comparison;
+                }
+                i = endA;
+                j = endB;
+            } else if (ca != cb) {
+                return Character.compare(ca, cb);
+            } else {
+                i++;
+                j++;
+            }
+        }
+        int comparison = Integer.compare(a.length() - i, b.length() - j);
+        return comparison != 0 ? comparison : a.compareTo(b);
+    }
+
+    private static int endOfDigits(String s, int from) {
+        int end = from;
+        while (end < s.length() && Character.isDigit(s.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static String stripLeadingZeros(String digits) {
+        int start = 0;
+        while (start < digits.length() - 1 && digits.charAt(start) == '0') {
+            start++;
+        }
+        return digits.substring(start);
+    }
+
+    /**
+     * Fichier qui suit {@code last} : son dernier nombre est incrémenté, ou le premier fichier de la source.
+     */
+    static Path nextShard(Path source, Path last) throws IOException {
+        Path directory = directoryOf(source);
+        String name;
+        if (last != null) {
+            name = next(last.getFileName().toString());
+        } else if (isDirectorySource(source)) {
+            name = FIRST_SHARD;
+        } else {
+            String pattern = source.getFileName().toString();
+            // Seul un motif à base de * indique le nom du premier fichier
+            name = pattern.replace("*", FIRST_NUMBER);
+            if (isPattern(name)) {
+                throw new IOException("No shard matches " + source + "; create the first one");
+            }
+        }
+        Path shard = directory.resolve(name);
+        if (!isDirectorySource(source) && !source.getFileSystem().getPathMatcher("glob:" + source.getFileName())
+                .matches(shard.getFileName())) {
+            throw new IOException("Next shard " + shard + " does not match " + source);
+        }
+        return shard;
+    }
+
+    private static String next(String name) {
+        // Le numéro se place avant l'extension complète : "todos.csv.gz" est suivi de "todos_2.csv.gz"
+        String extension = extensionOf(name);
+        int dot = name.lastIndexOf('.');
+        int end = extension != null ? name.length() - extension.length() : dot < 0 ? name.length() : dot;
+        int digitsEnd = end;
+        while (digitsEnd > 0 && !Character.isDigit(name.charAt(digitsEnd - 1))) {
+            digitsEnd--;
+        }
+        if (digitsEnd == 0) {
+            return name.substring(0, end) + "_2" + name.substring(end);
+        }
+        int digitsStart = digitsEnd;
+        while (digitsStart > 0 && Character.isDigit(name.charAt(digitsStart - 1))) {
+            digitsStart--;
+        }
+        String digits = name.substring(digitsStart, digitsEnd);
+        String incremented = new BigInteger(digits).add(BigInteger.ONE).toString();
+        if (incremented.length() < digits.length()) {
+            incremented = "0".repeat(digits.length() - incremented.length()) + incremented;
+        }
+        return name.substring(0, digitsStart) + incremented + name.substring(digitsEnd);
+    }
+
+    @Override
+    public TodoWriter openWriter(Path filePath) throws IOException {
+        return new ShardedTodoWriter(filePath);
+    }
+
+    @Override
+    public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+        long start = System.nanoTime();
+        List<Path> shards = shards(filePath);
+        // Au plus deux fichiers par cœur lus en avance, chacun limité à quelques paquets de tâches
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ShardReader> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < shards.size() || !pending.isEmpty()) {
+                while (next < shards.size() && pending.size() < window) {
+                    ShardReader reader = new ShardReader(shards.get(next++));
+                    pending.add(reader);
+                    pool.execute(reader);
+                }
+                // Retiré seulement une fois lu : en cas d'erreur, sa lecture est annulée avec les autres
+                pending.getFirst().drainTo(visitor);
+                pending.removeFirst();
+            }
+        } finally {
+            pending.forEach(ShardReader::cancel);
+        }
+        Metrics.INSTANCE.recordSince("sharded.read", start);
+    }
+
+    /**
+     * Lit un fichier sur le pool et transmet ses tâches par paquets, dans une file bornée : un fichier
+     * lu en avance n'occupe que quelques paquets en mémoire, quelle que soit sa taille.
+     */
+    private final class ShardReader implements Runnable {
+        private final Path shard;
+        private final BlockingQueue<List<Todo>> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile Exception failure;
+        // Paquet en cours de remplissage, propre au thread de lecture
+        private List<Todo> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        ShardReader(Path shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                managers.apply(shard).forEach(shard, todo -> {
+                    chunk.add(todo);
+                    if (chunk.size() == CHUNK_SIZE) {
+                        put(chunk);
+                        chunk = new ArrayList<>(CHUNK_SIZE);
+                    }
+                });
+                if (!chunk.isEmpty()) {
+                    put(chunk);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+            try {
+                put(END);
+            } catch (IOException e) {
+                // Lecture abandonnée : plus personne n'attend la fin
+            }
+        }
+
+        /**
+         * Attend de la place dans la file ; le pool compense le thread bloqué pour que les
+         * autres lectures, dont celle du fichier attendu par le visiteur, avancent.
+         */
+        private void put(List<Todo> chunk) throws IOException {
+            ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+                private boolean done;
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    done = done || cancelled || chunks.offer(chunk, 10, TimeUnit.MILLISECONDS);
+                    return done;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    done = done || cancelled || chunks.offer(chunk);
+                    return done;
+                }
+            };
+            try {
+                ForkJoinPool.managedBlock(blocker);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + shard);
+            }
+            if (cancelled) {
+                throw new InterruptedIOException("Reading " + shard + " was cancelled");
+            }
+        }
+
+        /**
+         * Transmet les tâches du fichier au visiteur. Un fichier dont la lecture n'a pas encore
+         * commencé sur le pool est lu directement, sans passer par la file.
+         */
+        void drainTo(TodoVisitor visitor) throws IOException {
+            if (started.compareAndSet(false, true)) {
+                managers.apply(shard).forEach(shard, visitor);
+                return;
+            }
+            List<Todo> received;
+            try {
+                while ((received = chunks.take()) != END) {
+                    for (Todo todo : received) {
+                        visitor.visit(todo);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + shard);
+            }
+            Exception error = failure;
+            if (error instanceof IOException e) {
+                throw e;
+            }
+            if (error instanceof RuntimeException e) {
+                throw e;
+            }
+        }
+
+        void cancel() {
+            started.set(true);
+            cancelled = true;
+            chunks.clear();
+        }
+    }
+
+    /**
+     * Écrit dans le dernier fichier de la source, puis dans un nouveau fichier dès que la taille
+     * estimée du fichier courant atteint la taille maximale.
+     */
+    private final class ShardedTodoWriter implements TodoWriter {
+        private final Path source;
+        private Path shard;
+        private TodoWriter writer;
+        private long size;
+
+        ShardedTodoWriter(Path source) throws IOException {
+            this.source = source;
+            List<Path> shards = shards(source);
+            if (!shards.isEmpty()) {
+                shard = shards.get(shards.size() - 1);
+                size = Files.size(shard);
+            }
+            if (shard != null && size < maxShardSize) {
+                // Le dernier fichier est verrouillé dès l'ouverture de la session, comme un fichier seul
+                writer = managers.apply(shard).openWriter(shard);
+            }
+        }
+
+        @Override
+        public void write(Todo todo) throws IOException {
+            if (writer == null || size >= maxShardSize) {
+                roll();
+            }
+            writer.write(todo);
+            size += (todo.task() == null ? 0 : todo.task().length()) + RECORD_OVERHEAD;
+        }
+
+        private void roll() throws IOException {
+            if (writer != null) {
+                TodoWriter full = writer;
+                writer = null;
+                full.close();
+            }
+            if (shard == null || size >= maxShardSize) {
+                shard = nextShard(source, shard);
+                size = Files.exists(shard) ? Files.size(shard) : 0;
+            }
+            Files.createDirectories(shard.toAbsolutePath().getParent());
+            writer = managers.apply(shard).openWriter(shard);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (writer != null) {
+                writer.commit();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.fges.todoapp;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Table de canonicalisation des tâches gardées en mémoire (cache, instantanés du serveur) :
+ * des tâches égales, fréquentes quand elles sont générées à partir de modèles, partagent
+ * une seule instance de {@link Todo} et de son texte.
+ * <p>
+ * Les références sont faibles : une tâche qui n'est plus utilisée nulle part sort de la table.
+ * La table coûte une entrée par tâche distincte ; elle n'est utile que si les textes se répètent.
+ */
+final class TaskDictionary {
+    static final TaskDictionary INSTANCE = new TaskDictionary();
+
+    private final WeakHashMap<Todo, WeakReference<Todo>> table = new WeakHashMap<>();
+
+    /**
+     * Retourne l'instance canonique égale à {@code todo}, qui devient canonique si elle est la première.
+     */
+    synchronized Todo intern(Todo todo) {
+        WeakReference<Todo> reference = table.get(todo);
+        Todo canonical = reference == null ? null : reference.get();
+        if (canonical != null) {
+            return canonical;
+        }
+        if (todo.task() != null) {
+            // Même texte pour la tâche terminée et la non terminée
+            Todo other = get(new Todo(todo.task(), !todo.done()));
+            if (other != null && other.task() != todo.task()) {
+                todo = new Todo(other.task(), todo.done());
+            }
+        }
+        table.put(todo, new WeakReference<>(todo));
+        return todo;
+    }
+
+    private Todo get(Todo todo) {
+        WeakReference<Todo> reference = table.get(todo);
+        return reference == null ? null : reference.get();
+    }
+
+    synchronized int size() {
+        return table.size();
+    }
+}
@@ -0,0 +1,74 @@
+package com.fges.todoapp;
+
+import fr.anthonyquere.dumbcrud.Metrics;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Flux qui mesure le temps passé dans les lectures du flux sous-jacent.
+ * À la fermeture, il enregistre "&lt;nom&gt;.io" (lectures), "&lt;nom&gt;.parse" (le reste du temps
+ * depuis l'ouverture, moins celui du visiteur passé par {@link #excluding}) et "&lt;nom&gt;.bytes".
+ * Les lectures se font par blocs, ce qui garde la mesure négligeable.
+ */
+final class TimedInputStream extends FilterInputStream {
+    private final String name;
+    private final long openedAt = System.nanoTime();
+    private long ioNanos;
+    private long visitorNanos;
+    private long bytes;
+    private boolean closed;
+
+    TimedInputStream(InputStream in, String name) {
+        super(in);
+        this.name = name;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        ioNanos += System.nanoTime() - start;
+        if (b >= 0) {
+            bytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(b, off, len);
+        ioNanos += System.nanoTime() - start;
+        if (read > 0) {
+            bytes += read;
+        }
+        return read;
+    }
+
+    /**
+     * Visiteur dont le temps (affichage, mise en cache...) n'est pas compté dans l'analyse.
+     */
+    IndexableTodoFileManager.IndexedTodoVisitor excluding(IndexableTodoFileManager.IndexedTodoVisitor visitor) {
+        return (offset, todo) -> {
+            long start = System.nanoTime();
+            try {
+                visitor.visit(offset, todo);
+            } finally {
+                visitorNanos += System.nanoTime() - start;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (!closed) {
+            closed = true;
+            Metrics metrics = Metrics.INSTANCE;
+            metrics.record(name + ".io", ioNanos);
+            metrics.record(name + ".parse", System.nanoTime() - openedAt - ioNanos - visitorNanos);
+            metrics.add(name + ".bytes", bytes);
+        }
+    }
+}
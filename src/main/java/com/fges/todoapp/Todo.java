@@ -0,0 +1,14 @@
+package com.fges.todoapp;
+
+/**
+ * Tâche TODO telle qu'elle est lue ou écrite par les gestionnaires de fichiers.
+ */
+record Todo(String task, boolean done) {
+
+    /**
+     * Ligne affichée par la commande list.
+     */
+    String toDisplayLine() {
+        return "- " + (done ? "[DONE] " : "[TODO] ") + task;
+    }
+}
@@ -0,0 +1,195 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache en mémoire des fichiers de tâches déjà lus dans la JVM, avec éviction LRU.
+ * Sa taille est bornée en octets, estimés d'après le texte des tâches.
+ * Une entrée n'est valable que pour la taille et la date de modification du fichier
+ * au moment où elle a été lue ou complétée.
+ * Avec un {@link TaskDictionary}, les tâches égales des entrées partagent une seule instance.
+ */
+final class TodoCache {
+    private static final int MAX_FILES = 16;
+    // Au plus un quart du tas, pour laisser la place aux lectures et aux écritures en cours
+    private static final long MAX_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+    // Objet Todo, objet String et en-tête de son tableau d'octets, plus la référence dans l'entrée
+    private static final int TODO_OVERHEAD = 72;
+
+    static final TodoCache INSTANCE = new TodoCache(MAX_FILES, MAX_BYTES);
+
+    /**
+     * Identifie une version précise d'un fichier, avec son journal {@link JsonWriteAheadLog}
+     * s'il en a un (taille -1 sinon) : une insertion peut ne modifier que le journal.
+     */
+    record Key(Path path, long size, long modified, long journalSize, long journalModified) {
+
+        /**
+         * Retourne la clé de l'état actuel du fichier, ou null s'il n'existe pas.
+         */
+        static Key of(Path filePath) throws IOException {
+            Path path = filePath.toAbsolutePath().normalize();
+            BasicFileAttributes attributes = attributesOf(path);
+            if (attributes == null) {
+                return null;
+            }
+            BasicFileAttributes journal = attributesOf(JsonWriteAheadLog.pathOf(path));
+            return new Key(path, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    journal == null ? -1 : journal.size(),
+                    journal == null ? -1 : journal.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        }
+
+        private static BasicFileAttributes attributesOf(Path path) throws IOException {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private Key key;
+        private Todo[] todos;
+        private int size;
+        private long bytes;
+
+        Entry(Key key, Todo[] todos, int size, long bytes) {
+            this.key = key;
+            this.todos = todos;
+            this.size = size;
+            this.bytes = bytes;
+        }
+    }
+
+    private final int maxFiles;
+    private final long maxBytes;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private TaskDictionary dictionary;
+
+    TodoCache(int maxFiles, long maxBytes) {
+        this.maxFiles = maxFiles;
+        this.maxBytes = maxBytes;
+    }
+
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Estimation de la mémoire occupée par une tâche en cache.
+     */
+    static long sizeOf(Todo todo) {
+        return TODO_OVERHEAD + (todo.task() == null ? 0 : 2L * todo.task().length());
+    }
+
+    /**
+     * Canonicalise les tâches ajoutées ensuite au cache, ou plus aucune si {@code dictionary} est null.
+     */
+    synchronized void setDictionary(TaskDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Retourne les tâches en cache pour cette version du fichier, ou null. Une entrée
+     * qui correspond à une autre version du même fichier est supprimée.
+     */
+    synchronized List<Todo> get(Key key) {
+        Entry entry = entries.get(key.path());
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.key.equals(key)) {
+            remove(key.path());
+            return null;
+        }
+        // Les ajouts se font au-delà de size ou dans un nouveau tableau : la vue reste stable
+        return Collections.unmodifiableList(Arrays.asList(entry.todos).subList(0, entry.size));
+    }
+
+    synchronized void put(Key key, List<Todo> todos) {
+        remove(key.path());
+        long bytes = 0;
+        for (Todo todo : todos) {
+            bytes += sizeOf(todo);
+        }
+        if (bytes > maxBytes) {
+            return;
+        }
+        Todo[] array = new Todo[todos.size()];
+        int size = 0;
+        for (Todo todo : todos) {
+            array[size++] = canonical(todo);
+        }
+        entries.put(key.path(), new Entry(key, array, size, bytes));
+        totalBytes += bytes;
+        evict();
+    }
+
+    /**
+     * Complète l'entrée après un ajout en fin de fichier. Si le cache ne contenait pas
+     * exactement la version précédente, l'entrée est simplement invalidée.
+     *
+     * @param before version du fichier avant l'écriture, null s'il n'existait pas
+     * @param after  version du fichier après l'écriture
+     */
+    synchronized void append(Key before, Key after, List<Todo> added) {
+        Path path = after.path();
+        Entry entry = entries.get(path);
+        if (before == null) {
+            put(after, added);
+            return;
+        }
+        if (entry == null || !entry.key.equals(before) || added == null) {
+            remove(path);
+            return;
+        }
+        if (entry.size + added.size() > entry.todos.length) {
+            entry.todos = Arrays.copyOf(entry.todos, Math.max(entry.todos.length * 2, entry.size + added.size()));
+        }
+        long bytes = 0;
+        for (Todo todo : added) {
+            entry.todos[entry.size++] = canonical(todo);
+            bytes += sizeOf(todo);
+        }
+        entry.key = after;
+        entry.bytes += bytes;
+        totalBytes += bytes;
+        evict();
+    }
+
+    private Todo canonical(Todo todo) {
+        return dictionary == null ? todo : dictionary.intern(todo);
+    }
+
+    synchronized void invalidate(Path filePath) {
+        remove(filePath.toAbsolutePath().normalize());
+    }
+
+    private void remove(Path path) {
+        Entry removed = entries.remove(path);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Path, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxFiles || totalBytes > maxBytes) && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+        }
+    }
+}
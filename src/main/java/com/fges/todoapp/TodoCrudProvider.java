@@ -0,0 +1,139 @@
+package com.fges.todoapp;
+
+import fr.anthonyquere.dumbcrud.CrudProvider;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Expose un fichier de tâches à {@link fr.anthonyquere.dumbcrud.DummyCrudEndpoint}.
+ * Les lectures sont servies depuis un instantané en mémoire, lisible sans verrou par
+ * plusieurs threads ; il est complété à chaque écriture et rechargé si le fichier a été
+ * modifié par ailleurs.
+ * Avec un {@link TaskDictionary}, les tâches égales de l'instantané partagent une seule instance.
+ */
+class TodoCrudProvider implements CrudProvider<Todo> {
+
+    /**
+     * Instantané immuable : les ajouts se font au-delà de {@code size} ou dans un nouveau tableau.
+     */
+    private record Snapshot(Object key, Todo[] todos, int size) {
+
+        List<Todo> view() {
+            return Collections.unmodifiableList(Arrays.asList(todos).subList(0, size));
+        }
+    }
+
+    private final TodoFileManager manager;
+    private final Path filePath;
+    private final TaskDictionary dictionary;
+    private volatile Snapshot snapshot;
+
+    TodoCrudProvider(TodoFileManager manager, Path filePath) throws IOException {
+        this(manager, filePath, null);
+    }
+
+    /**
+     * @param dictionary table de canonicalisation des tâches de l'instantané, ou null
+     */
+    TodoCrudProvider(TodoFileManager manager, Path filePath, TaskDictionary dictionary) throws IOException {
+        this.manager = manager;
+        this.filePath = filePath;
+        this.dictionary = dictionary;
+        this.snapshot = load();
+    }
+
+    @Override
+    public void add(Todo todo) throws IOException {
+        addAll(List.of(todo));
+    }
+
+    @Override
+    public synchronized void addAll(List<Todo> todos) throws IOException {
+        Object before;
+        Object after;
+        try (TodoWriter writer = manager.openWriter(filePath)) {
+            // Versions lues sous le verrou de l'écrivain : une écriture d'un autre processus ne peut pas s'intercaler
+            before = version();
+            for (Todo todo : todos) {
+                writer.write(todo);
+            }
+            writer.commit();
+            after = version();
+        }
+
+        Snapshot current = snapshot;
+        if (!Objects.equals(current.key(), before)) {
+            snapshot = load();
+            return;
+        }
+        Todo[] array = current.todos();
+        int size = current.size();
+        if (size + todos.size() > array.length) {
+            array = Arrays.copyOf(array, Math.max(array.length * 2, size + todos.size()));
+        }
+        for (Todo todo : todos) {
+            array[size++] = canonical(todo);
+        }
+        snapshot = new Snapshot(after, array, size);
+    }
+
+    @Override
+    public List<Todo> list() throws IOException {
+        return current().view();
+    }
+
+    @Override
+    public Iterator<Todo> iterator(long offset, long limit) throws IOException {
+        List<Todo> todos = current().view();
+        int from = (int) Math.min(offset, todos.size());
+        int to = (int) Math.min(todos.size(), from + Math.min(limit, Integer.MAX_VALUE));
+        return todos.subList(from, to).iterator();
+    }
+
+    /**
+     * Retourne l'instantané, rechargé si le fichier a changé depuis (autre processus, CLI...).
+     */
+    private Snapshot current() throws IOException {
+        Snapshot current = snapshot;
+        if (Objects.equals(current.key(), version())) {
+            return current;
+        }
+        synchronized (this) {
+            if (!Objects.equals(snapshot.key(), version())) {
+                snapshot = load();
+            }
+            return snapshot;
+        }
+    }
+
+    private Snapshot load() throws IOException {
+        Object key = version();
+        List<Todo> loaded = manager.readAll(filePath);
+        Todo[] todos = new Todo[loaded.size()];
+        int size = 0;
+        for (Todo todo : loaded) {
+            todos[size++] = canonical(todo);
+        }
+        return new Snapshot(key, todos, size);
+    }
+
+    /**
+     * Version du fichier, ou de chacun des fichiers d'une source partitionnée : la date d'un dossier
+     * ne change pas quand un de ses fichiers est complété.
+     */
+    private Object version() throws IOException {
+        if (ShardedTodoFileManager.isShardedSource(filePath)) {
+            return ShardedTodoFileManager.versionOf(filePath);
+        }
+        return TodoCache.Key.of(filePath);
+    }
+
+    private Todo canonical(Todo todo) {
+        return dictionary == null ? todo : dictionary.intern(todo);
+    }
+}
@@ -0,0 +1,134 @@
+package com.fges.todoapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Verrou exclusif d'écriture sur un fichier de tâches, entre processus et entre threads.
+ * Le verrou de fichier du système ne protège que contre les autres processus : les threads
+ * de la JVM passent d'abord par un sémaphore par fichier.
+ */
+final class TodoFileLock implements Closeable {
+    private static final Map<Path, Holder> HOLDERS = new HashMap<>();
+
+    private static final class Holder {
+        private final Semaphore semaphore = new Semaphore(1, true);
+        private int users;
+    }
+
+    private final Path path;
+    private final Holder holder;
+    private final FileLock fileLock;
+    // Canal ouvert par openLocked, fermé avec le verrou ; null quand l'appelant garde le sien
+    private final FileChannel channel;
+
+    private TodoFileLock(Path path, Holder holder, FileLock fileLock, FileChannel channel) {
+        this.path = path;
+        this.holder = holder;
+        this.fileLock = fileLock;
+        this.channel = channel;
+    }
+
+    /**
+     * Attend le verrou exclusif du fichier ouvert dans {@code channel}.
+     */
+    static TodoFileLock acquire(Path filePath, FileChannel channel) throws IOException {
+        return acquire(filePath, channel, null);
+    }
+
+    /**
+     * Ouvre le fichier en lecture et écriture, le crée au besoin, et attend son verrou. Un écrivain qui
+     * remplace le fichier par renommage peut le faire pendant l'attente : si le fichier verrouillé
+     * n'est plus celui du chemin, on recommence sur le nouveau.
+     *
+     * @return le verrou, dont le canal {@link #channel()} est fermé avec lui
+     */
+    static TodoFileLock openLocked(Path filePath) throws IOException {
+        while (true) {
+            Object before = fileKey(filePath);
+            FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            TodoFileLock lock;
+            try {
+                lock = acquire(filePath, channel, channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            Object after = fileKey(filePath);
+            // Sans identifiant de fichier (selon le système), on ne peut pas vérifier
+            if (after == null || after.equals(before)) {
+                return lock;
+            }
+            lock.close();
+        }
+    }
+
+    private static Object fileKey(Path filePath) throws IOException {
+        try {
+            return Files.readAttributes(filePath, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static TodoFileLock acquire(Path filePath, FileChannel channel, FileChannel owned) throws IOException {
+        Path path = filePath.toAbsolutePath().normalize();
+        Holder holder;
+        synchronized (HOLDERS) {
+            holder = HOLDERS.computeIfAbsent(path, p -> new Holder());
+            holder.users++;
+        }
+        try {
+            holder.semaphore.acquire();
+        } catch (InterruptedException e) {
+            release(path, holder);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for lock on " + filePath);
+        }
+        try {
+            return new TodoFileLock(path, holder, channel.lock(), owned);
+        } catch (IOException | RuntimeException e) {
+            holder.semaphore.release();
+            release(path, holder);
+            throw e;
+        }
+    }
+
+    /**
+     * Canal du fichier verrouillé par {@link #openLocked(Path)}.
+     */
+    FileChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            if (fileLock.isValid()) {
+                fileLock.release();
+            }
+        } finally {
+            holder.semaphore.release();
+            release(path, holder);
+        }
+    }
+
+    private static void release(Path path, Holder holder) {
+        synchronized (HOLDERS) {
+            if (--holder.users == 0) {
+                HOLDERS.remove(path);
+            }
+        }
+    }
+}
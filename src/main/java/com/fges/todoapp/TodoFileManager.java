@@ -0,0 +1,50 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interface définissant les opérations pour gérer les fichiers de tâches TODO.
+ */
+interface TodoFileManager {
+    /**
+     * Ouvre une session d'écriture en fin de fichier, pour ajouter plusieurs tâches en une passe.
+     */
+    TodoWriter openWriter(Path filePath) throws IOException;
+
+    /**
+     * Parcourt les tâches du fichier dans l'ordre, sans les conserver en mémoire.
+     */
+    void forEach(Path filePath, TodoVisitor visitor) throws IOException;
+
+    /**
+     * Ajoute une tâche ; les insertions concurrentes sur le même fichier sont écrites par lots.
+     */
+    default void insert(String todo, boolean isDone, Path filePath) throws IOException {
+        GroupCommit.insert(this, filePath, new Todo(todo, isDone));
+    }
+
+    default void insertAll(Iterable<Todo> todos, Path filePath) throws IOException {
+        try (TodoWriter writer = openWriter(filePath)) {
+            for (Todo todo : todos) {
+                writer.write(todo);
+            }
+        }
+    }
+
+    default void list(Path filePath, boolean onlyDone) throws IOException {
+        forEach(filePath, todo -> {
+            if (!onlyDone || todo.done()) {
+                System.out.println(todo.toDisplayLine());
+            }
+        });
+    }
+
+    default List<Todo> readAll(Path filePath) throws IOException {
+        List<Todo> todos = new ArrayList<>();
+        forEach(filePath, todos::add);
+        return todos;
+    }
+}
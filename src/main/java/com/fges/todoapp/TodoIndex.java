@@ -0,0 +1,149 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Index ".idx" placé à côté d'un fichier de tâches : bitmap des tâches terminées et
+ * position de chacune d'elles dans le fichier source.
+ *
+ * <pre>
+ * "TIDX" | version (int) | taille source (long) | date de modification source en ns (long)
+ *        | taille du journal (long, -1 sans journal) | date de modification du journal en ns (long)
+ *        | nombre de tâches (int) | nombre de tâches terminées (int)
+ *        | bitmap done ((nombre + 7) / 8 octets) | positions des tâches terminées (long chacune)
+ * </pre>
+ *
+ * L'index n'est valable que pour la version du fichier source enregistrée ({@link TodoCache.Key}) :
+ * s'il ne correspond plus au fichier source, il est reconstruit avant d'être utilisé.
+ */
+final class TodoIndex {
+    private static final int MAGIC = 0x54494458; // "TIDX"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+    static final String SUFFIX = ".idx";
+
+    private final long sourceSize;
+    private final long sourceModified;
+    private final long journalSize;
+    private final long journalModified;
+    private final int count;
+    private final byte[] doneBitmap;
+    private final long[] doneOffsets;
+
+    private TodoIndex(TodoCache.Key source, int count, byte[] doneBitmap, long[] doneOffsets) {
+        this.sourceSize = source.size();
+        this.sourceModified = source.modified();
+        this.journalSize = source.journalSize();
+        this.journalModified = source.journalModified();
+        this.count = count;
+        this.doneBitmap = doneBitmap;
+        this.doneOffsets = doneOffsets;
+    }
+
+    static Path indexPath(Path sourcePath) {
+        return sourcePath.resolveSibling(sourcePath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Affiche les tâches terminées en relisant uniquement leurs positions indexées.
+     * Un index périmé est reconstruit au passage.
+     *
+     * @return false si aucun index n'existe à côté du fichier
+     */
+    static boolean listDone(IndexableTodoFileManager manager, Path sourcePath, boolean create) throws IOException {
+        if (!Files.exists(sourcePath) || (!create && !Files.exists(indexPath(sourcePath)))) {
+            return false;
+        }
+        TodoIndex index = update(manager, sourcePath);
+        manager.readAt(sourcePath, index.doneOffsets, todo -> System.out.println(todo.toDisplayLine()));
+        return true;
+    }
+
+    /**
+     * Crée ou reconstruit l'index s'il est absent ou ne correspond plus au fichier source.
+     */
+    static TodoIndex update(IndexableTodoFileManager manager, Path sourcePath) throws IOException {
+        Path indexPath = indexPath(sourcePath);
+        TodoIndex index = load(indexPath);
+        if (index == null || !index.matches(sourcePath)) {
+            index = build(manager, sourcePath);
+            index.save(indexPath);
+        }
+        return index;
+    }
+
+    static TodoIndex build(IndexableTodoFileManager manager, Path sourcePath) throws IOException {
+        // La version est lue avant le parcours : une écriture concurrente rendra l'index périmé
+        TodoCache.Key source = TodoCache.Key.of(sourcePath);
+        if (source == null) {
+            throw new NoSuchFileException(sourcePath.toString());
+        }
+        int[] count = {0};
+        byte[][] bitmap = {new byte[64]};
+        long[][] offsets = {new long[16]};
+        int[] doneCount = {0};
+        manager.forEachIndexed(sourcePath, (offset, todo) -> {
+            int index = count[0]++;
+            if (index >>> 3 == bitmap[0].length) {
+                bitmap[0] = Arrays.copyOf(bitmap[0], bitmap[0].length * 2);
+            }
+            if (todo.done()) {
+                bitmap[0][index >>> 3] |= (byte) (1 << (index & 7));
+                if (doneCount[0] == offsets[0].length) {
+                    offsets[0] = Arrays.copyOf(offsets[0], offsets[0].length * 2);
+                }
+                offsets[0][doneCount[0]++] = offset;
+            }
+        });
+        return new TodoIndex(source, count[0],
+                Arrays.copyOf(bitmap[0], (count[0] + 7) / 8), Arrays.copyOf(offsets[0], doneCount[0]));
+    }
+
+    boolean matches(Path sourcePath) throws IOException {
+        TodoCache.Key source = TodoCache.Key.of(sourcePath);
+        return source != null && source.size() == sourceSize && source.modified() == sourceModified
+                && source.journalSize() == journalSize && source.journalModified() == journalModified;
+    }
+
+    /**
+     * Charge l'index, ou retourne null s'il est absent ou illisible.
+     */
+    static TodoIndex load(Path indexPath) throws IOException {
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        TodoCache.Key source = new TodoCache.Key(indexPath, buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        int count = buffer.getInt();
+        int doneCount = buffer.getInt();
+        if (count < 0 || doneCount < 0 || buffer.remaining() != (count + 7) / 8 + (long) doneCount * Long.BYTES) {
+            return null;
+        }
+        byte[] bitmap = new byte[(count + 7) / 8];
+        buffer.get(bitmap);
+        long[] offsets = new long[doneCount];
+        buffer.asLongBuffer().get(offsets);
+        return new TodoIndex(source, count, bitmap, offsets);
+    }
+
+    void save(Path indexPath) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + doneBitmap.length + doneOffsets.length * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified)
+                .putLong(journalSize).putLong(journalModified)
+                .putInt(count).putInt(doneOffsets.length).put(doneBitmap);
+        buffer.asLongBuffer().put(doneOffsets);
+        // Écriture dans un fichier temporaire puis renommage : un lecteur ne voit jamais un index partiel
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        Files.write(tmp, buffer.array());
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,11 @@
+package com.fges.todoapp;
+
+import java.io.IOException;
+
+/**
+ * Reçoit les tâches une par une pendant le parcours d'un fichier.
+ */
+@FunctionalInterface
+interface TodoVisitor {
+    void visit(Todo todo) throws IOException;
+}
@@ -0,0 +1,19 @@
+package com.fges.todoapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Session d'écriture qui ajoute des tâches à la fin d'un fichier.
+ * Le fichier n'est complet et synchronisé sur le disque qu'après {@link #commit()} ou {@link #close()}.
+ */
+interface TodoWriter extends Closeable {
+    void write(Todo todo) throws IOException;
+
+    /**
+     * Termine l'écriture sans relâcher le verrou du fichier, qui ne l'est qu'à la fermeture :
+     * l'appelant peut lire la version du fichier qui contient ses tâches, et seulement elles.
+     * Plus aucune tâche ne peut être écrite ensuite.
+     */
+    void commit() throws IOException;
+}
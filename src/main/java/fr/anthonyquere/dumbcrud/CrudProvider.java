@@ -1,5 +1,6 @@
 package fr.anthonyquere.dumbcrud;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -14,9 +15,33 @@ public interface CrudProvider<Domain> {
      */
     void add(Domain domain) throws Exception;
 
+    /**
+     * Defines how a batch of domains should be stored. The default implementation calls {@link #add(Object)}
+     * for each domain: providers that can persist a whole batch in one write should override it.
+     * @param domains instances of the class to store, in order
+     * @throws Exception if anything fails
+     */
+    default void addAll(List<Domain> domains) throws Exception {
+        for (Domain domain : domains) {
+            add(domain);
+        }
+    }
+
     /**
      * List all domains stored
      * @throws Exception if anything fails
      */
     List<Domain> list() throws Exception;
+
+    /**
+     * Iterate over a page of the stored domains, in the same order as {@link #list()}.
+     * The default implementation pages over {@link #list()}: providers able to read their storage
+     * lazily should override it so large collections are served in constant memory.
+     * @param offset number of domains to skip
+     * @param limit maximum number of domains to return, {@link Long#MAX_VALUE} for all of them
+     * @throws Exception if anything fails
+     */
+    default Iterator<Domain> iterator(long offset, long limit) throws Exception {
+        return list().stream().skip(offset).limit(limit).iterator();
+    }
 }
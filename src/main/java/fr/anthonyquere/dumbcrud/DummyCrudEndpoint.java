@@ -1,10 +1,25 @@
 package fr.anthonyquere.dumbcrud;
 
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DummyCrudEndpoint creates a simple web server that handles GET and POST operations on a single endpoint.
@@ -13,10 +28,26 @@ import java.net.InetSocketAddress;
  */
 public class DummyCrudEndpoint<Domain> {
 
+    /**
+     * Shared by every endpoint: ObjectMapper is thread-safe once configured and costly to create
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private final String domainName;
     private final CrudProvider<Domain> crudProvider;
     private final Class<Domain> domainClass;
+    private final ObjectReader domainReader;
+    private final ObjectWriter domainWriter;
+    private final ObjectWriter messageWriter;
+
+    private Executor executor;
+    private int backlog = 0;
+    private int batchSize = 1000;
+    private int maxPageSize = 10_000;
+    private Metrics metrics = Metrics.INSTANCE;
+    private HttpServer server;
+    // Created by run() when no executor was given, shut down by stop()
+    private ExecutorService ownedExecutor;
 
     /**
      * Create a DummyCrudEndpoint
@@ -28,59 +59,287 @@ public class DummyCrudEndpoint<Domain> {
         this.domainName = domainName;
         this.crudProvider = crudProvider;
         this.domainClass = domainClass;
+
+        // Readers and writers resolve their (de)serializers eagerly, so the first request does not pay for it
+        this.domainReader = OBJECT_MAPPER.readerFor(domainClass);
+        this.domainWriter = OBJECT_MAPPER.writerFor(domainClass);
+        this.messageWriter = OBJECT_MAPPER.writerFor(MessageResponse.class);
+    }
+
+    /**
+     * Sets the executor that runs the request handlers.
+     * Defaults to one virtual thread per request when the runtime supports it, a cached thread pool otherwise.
+     * @param executor executor used by the web server
+     * @return this endpoint
+     */
+    public DummyCrudEndpoint<Domain> withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of pending connections queued by the web server.
+     * @param backlog socket backlog, 0 to use the system default
+     * @return this endpoint
+     */
+    public DummyCrudEndpoint<Domain> withBacklog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    /**
+     * Sets the registry that receives the request counts and latencies, and that is served on /metrics.
+     * Defaults to {@link Metrics#INSTANCE}.
+     * @param metrics metrics registry
+     * @return this endpoint
+     */
+    public DummyCrudEndpoint<Domain> withMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
     }
 
     public record MessageResponse(String message) {
     }
 
+    /**
+     * Sets how many domains of a bulk POST are handed to {@link CrudProvider#addAll(List)} at once.
+     * @param batchSize number of domains per batch
+     * @return this endpoint
+     */
+    public DummyCrudEndpoint<Domain> withBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the largest page a GET with a {@code limit} returns; larger limits are lowered to it.
+     * Such a page is held in memory until its next cursor is known.
+     * @param maxPageSize maximum number of domains per page
+     * @return this endpoint
+     */
+    public DummyCrudEndpoint<Domain> withMaxPageSize(int maxPageSize) {
+        if (maxPageSize < 1) {
+            throw new IllegalArgumentException("maxPageSize must be positive");
+        }
+        this.maxPageSize = maxPageSize;
+        return this;
+    }
+
     /**
      * Starts the web server on the given ports. It listens to any host (0.0.0.0).
+     * Kept-alive clients get their responses faster when the application sets the JVM-wide
+     * {@code sun.net.httpserver.nodelay} property before the first server is started.
      * @param port port to listen
      * @throws IOException fail to parse / un-parse from JSON
      */
     public void run(int port) throws IOException {
-        var api = HttpServer.create(new InetSocketAddress("0.0.0.0", port), 0);
-
+        var api = HttpServer.create(new InetSocketAddress("0.0.0.0", port), backlog);
+        if (executor != null) {
+            api.setExecutor(executor);
+        } else {
+            ownedExecutor = defaultExecutor();
+            api.setExecutor(ownedExecutor);
+        }
 
         api.createContext("/" + domainName, exchange -> {
-            var objectParser = new ObjectMapper();
-
             System.err.println("Received request");
 
             var method = exchange.getRequestMethod();
-            var bodyWriter = exchange.getResponseBody();
-            Object bodyContent;
-
-            if (method.equals("GET")) {
-                try {
-                    bodyContent = crudProvider.list();
-                } catch (Exception e) {
-                    bodyContent = new MessageResponse("ERROR: " + e.getMessage());
-                }
-            } else if (method.equals("POST")) {
-                try {
-                    var domain = objectParser.readValue(exchange.getRequestBody(), domainClass);
-                    crudProvider.add(domain);
-                    bodyContent = new MessageResponse("inserted");
-                } catch (Exception e) {
-                    bodyContent = new MessageResponse("ERROR: " + e.getMessage());
+            // Unknown methods share one metric, so clients cannot create new ones at will
+            var metric = method.equals("GET") || method.equals("POST") ? "http." + method : "http.OTHER";
+            long start = System.nanoTime();
+            try (exchange) {
+                if (method.equals("GET")) {
+                    handleGet(exchange);
+                } else if (method.equals("POST")) {
+                    handlePost(exchange);
+                } else {
+                    sendMessage(exchange, "Invalid method");
                 }
-            } else {
-                bodyContent = new MessageResponse("Invalid method");
+            } catch (IOException | RuntimeException e) {
+                // The response may already be partially sent: all we can do is drop the connection
+                System.err.println("Request failed: " + e);
+                metrics.increment(metric + ".failed");
+            } finally {
+                metrics.recordSince(metric, start);
             }
+        });
 
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.sendResponseHeaders(200, 0);
-
-            var bodyBytes = objectParser.writeValueAsBytes(bodyContent);
-
-            bodyWriter.write(bodyBytes);
-            bodyWriter.flush();
-            bodyWriter.close();
+        api.createContext("/metrics", exchange -> {
+            try (exchange) {
+                var body = OBJECT_MAPPER.writeValueAsBytes(metrics.snapshot());
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
         });
 
         System.err.println("Starting web server on " + api.getAddress().toString());
         System.err.println("Thread priority " + Thread.currentThread().getPriority());
         api.start();
+        server = api;
+    }
+
+    /**
+     * Streams the stored domains as a JSON array, one element at a time.
+     * Query parameters: {@code offset} (or the opaque {@code cursor} returned by a previous page)
+     * and {@code limit}, at most {@link #withMaxPageSize(int) maxPageSize}. When more elements follow
+     * the page, the {@code X-Next-Cursor} header holds the cursor of the next page. Without a limit,
+     * every element from the offset is streamed.
+     */
+    private void handleGet(HttpExchange exchange) throws IOException {
+        Iterator<Domain> page;
+        try {
+            var query = parseQuery(exchange.getRequestURI().getRawQuery());
+            long offset = parseCount(query.getOrDefault("cursor", query.getOrDefault("offset", "0")), "offset");
+            long limit = query.containsKey("limit")
+                    ? Math.min(parseCount(query.get("limit"), "limit"), maxPageSize) : Long.MAX_VALUE;
+            if (limit == Long.MAX_VALUE) {
+                page = crudProvider.iterator(offset, limit);
+            } else {
+                // One element past the page tells whether another page follows, from the same iterator:
+                // the page is buffered because the header must be sent before the body
+                var domains = crudProvider.iterator(offset, limit + 1);
+                var buffered = new ArrayList<Domain>((int) limit);
+                while (buffered.size() < limit && domains.hasNext()) {
+                    buffered.add(domains.next());
+                }
+                if (domains.hasNext()) {
+                    exchange.getResponseHeaders().set("X-Next-Cursor", Long.toString(offset + limit));
+                }
+                page = buffered.iterator();
+            }
+        } catch (Exception e) {
+            sendMessage(exchange, "ERROR: " + e.getMessage());
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (var generator = OBJECT_MAPPER.getFactory().createGenerator(exchange.getResponseBody())) {
+            generator.writeStartArray();
+            while (page.hasNext()) {
+                domainWriter.writeValue(generator, page.next());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Stores the request body, which can be a single domain, a JSON array of domains or
+     * newline-delimited domains (NDJSON). Elements are parsed one at a time and handed to the
+     * provider in batches of {@link #withBatchSize(int) batchSize}.
+     */
+    private void handlePost(HttpExchange exchange) throws IOException {
+        long inserted = 0;
+        String message;
+        try (var parser = OBJECT_MAPPER.getFactory().createParser(exchange.getRequestBody())) {
+            var token = parser.nextToken();
+            if (token == null) {
+                throw new IllegalArgumentException("empty request body");
+            }
+            boolean isArray = token == JsonToken.START_ARRAY;
+            if (isArray) {
+                token = parser.nextToken();
+            }
+            var batch = new ArrayList<Domain>();
+            boolean isSingle = !isArray;
+            while (token != null && token != JsonToken.END_ARRAY) {
+                batch.add(domainReader.readValue(parser));
+                if (batch.size() == batchSize) {
+                    crudProvider.addAll(batch);
+                    inserted += batch.size();
+                    batch = new ArrayList<>();
+                }
+                token = parser.nextToken();
+                isSingle &= token == null;
+            }
+            if (!batch.isEmpty()) {
+                crudProvider.addAll(batch);
+                inserted += batch.size();
+            }
+            message = isSingle && inserted == 1 ? "inserted" : "inserted " + inserted;
+        } catch (Exception e) {
+            message = "ERROR: " + e.getMessage() + (inserted > 0 ? " (inserted " + inserted + " before the error)" : "");
+        }
+        sendMessage(exchange, message);
+    }
+
+    private void sendMessage(HttpExchange exchange, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (var bodyWriter = exchange.getResponseBody()) {
+            messageWriter.writeValue(bodyWriter, new MessageResponse(message));
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        var query = new HashMap<String, String>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (var parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static long parseCount(String value, String name) {
+        try {
+            long count = Long.parseLong(value);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("invalid " + name + ": " + value);
+    }
+
+    /**
+     * Stops the web server started by {@link #run(int)}, and the default executor it created.
+     * An executor given to {@link #withExecutor(Executor)} is left to its owner.
+     * @param delay maximum time in seconds to wait for in-flight exchanges to finish
+     */
+    public void stop(int delay) {
+        if (server != null) {
+            server.stop(delay);
+            server = null;
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            ownedExecutor = null;
+        }
+    }
+
+    /**
+     * @return the port the web server listens to, useful when started on port 0
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Virtual threads are only available from Java 21: look the factory up at runtime so the
+     * endpoint keeps compiling for older targets, and fall back to a cached pool of platform threads.
+     */
+    private static ExecutorService defaultExecutor() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            var threadCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "dumbcrud-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
     }
 }
@@ -0,0 +1,87 @@
+package fr.anthonyquere.dumbcrud;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram:
+ * each power of two is split in {@value #SUB_BUCKETS_PER_POWER} buckets, so a recorded value
+ * is known within about 6%, from one nanosecond up to {@link Long#MAX_VALUE}.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKETS_PER_POWER = SUB_BUCKETS / 2;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS_PER_POWER;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one value
+     * @param nanos measured latency, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long mean() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : sum.get() / recorded;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the value at this percentile, 0 if nothing was recorded
+     */
+    public long valueAtPercentile(double percentile) {
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(value);
+        int shift = power - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS_PER_POWER;
+        return SUB_BUCKETS + (power - SUB_BUCKET_BITS) * SUB_BUCKETS_PER_POWER + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int index = bucket - SUB_BUCKETS;
+        int shift = index / SUB_BUCKETS_PER_POWER + 1;
+        long subBucket = index % SUB_BUCKETS_PER_POWER + SUB_BUCKETS_PER_POWER;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
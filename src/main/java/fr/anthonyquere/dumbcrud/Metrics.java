@@ -0,0 +1,88 @@
+package fr.anthonyquere.dumbcrud;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and latency histograms, shared by the whole process through {@link #INSTANCE}.
+ * Latencies are recorded in nanoseconds and reported in microseconds.
+ */
+public class Metrics {
+
+    public static final Metrics INSTANCE = new Metrics();
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Record the time elapsed since {@code startNanos}, a value taken from {@link System#nanoTime()}
+     */
+    public void recordSince(String name, long startNanos) {
+        record(name, System.nanoTime() - startNanos);
+    }
+
+    public void record(String name, long nanos) {
+        latencies.computeIfAbsent(name, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    public long counter(String name) {
+        var counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public LatencyHistogram latency(String name) {
+        return latencies.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public void reset() {
+        counters.clear();
+        latencies.clear();
+    }
+
+    /**
+     * @return counters as numbers and latencies as count / mean / percentiles / max in microseconds, sorted by name
+     */
+    public Map<String, Object> snapshot() {
+        var snapshot = new TreeMap<String, Object>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        latencies.forEach((name, histogram) -> {
+            var summary = new LinkedHashMap<String, Long>();
+            summary.put("count", histogram.count());
+            summary.put("mean_us", histogram.mean() / 1000);
+            summary.put("p50_us", histogram.valueAtPercentile(50) / 1000);
+            summary.put("p90_us", histogram.valueAtPercentile(90) / 1000);
+            summary.put("p99_us", histogram.valueAtPercentile(99) / 1000);
+            summary.put("max_us", histogram.max() / 1000);
+            snapshot.put(name, summary);
+        });
+        return snapshot;
+    }
+
+    /**
+     * @return one line per metric, for a terminal
+     */
+    public String report() {
+        var report = new StringBuilder();
+        snapshot().forEach((name, value) -> {
+            report.append(name);
+            if (value instanceof Map<?, ?> summary) {
+                summary.forEach((key, number) -> report.append(' ').append(key).append('=').append(number));
+            } else {
+                report.append(' ').append(value);
+            }
+            report.append(System.lineSeparator());
+        });
+        return report.toString();
+    }
+}
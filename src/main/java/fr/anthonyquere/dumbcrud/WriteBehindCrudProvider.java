@@ -0,0 +1,242 @@
+package fr.anthonyquere.dumbcrud;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind layer around a CrudProvider: adds are queued and a background thread hands them
+ * to the wrapped provider in batches, when a batch is full or when the oldest queued add has waited
+ * long enough.
+ * <p>
+ * Reads are delegated as is: with {@link Durability#ACK_AFTER_ENQUEUE}, a domain acknowledged by
+ * {@link #add(Object)} may not be listed until its batch is flushed, see {@link #flush()}.
+ *
+ * @param <Domain> the object that you want to manage with your CRUD
+ */
+public class WriteBehindCrudProvider<Domain> implements CrudProvider<Domain>, AutoCloseable {
+
+    /**
+     * When an add returns to its caller
+     */
+    public enum Durability {
+        /**
+         * As soon as the domain is queued: lowest latency, queued domains are lost if the process dies
+         */
+        ACK_AFTER_ENQUEUE,
+        /**
+         * Once the batch containing the domain has been stored by the wrapped provider
+         */
+        ACK_AFTER_FLUSH
+    }
+
+    /**
+     * A queued domain, or a flush barrier when domain is null
+     */
+    private record Pending<Domain>(Domain domain, CompletableFuture<Void> stored) {
+    }
+
+    private final CrudProvider<Domain> delegate;
+    private final BlockingQueue<Pending<Domain>> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Durability durability;
+    private final Duration enqueueTimeout;
+    private final Thread flusher;
+    // Enqueuers check closed and offer under the read lock, closing takes the write lock:
+    // nothing can be queued once the flusher has seen closed and an empty queue
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    /**
+     * Create a write-behind provider and start its flusher thread
+     * @param delegate provider that actually stores the domains
+     * @param capacity maximum number of queued domains; adds wait for room when the queue is full
+     * @param maxBatchSize maximum number of domains handed to {@link CrudProvider#addAll(List)} at once
+     * @param maxDelay maximum time a queued domain waits for its batch to fill up
+     * @param enqueueTimeout maximum time an add waits for room in a full queue before being rejected
+     * @param durability when adds are acknowledged
+     */
+    public WriteBehindCrudProvider(CrudProvider<Domain> delegate, int capacity, int maxBatchSize, Duration maxDelay,
+                                   Duration enqueueTimeout, Durability durability) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.enqueueTimeout = enqueueTimeout;
+        this.durability = durability;
+        this.flusher = new Thread(this::flushLoop, "write-behind-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void add(Domain domain) throws Exception {
+        addAll(List.of(domain));
+    }
+
+    /**
+     * Queue the domains, waiting for room when the queue is full (backpressure).
+     * @throws RejectedExecutionException if the queue stays full longer than the enqueue timeout
+     */
+    @Override
+    public void addAll(List<Domain> domains) throws Exception {
+        var pending = new ArrayList<CompletableFuture<Void>>(domains.size());
+        for (Domain domain : domains) {
+            pending.add(enqueue(domain));
+        }
+        if (durability == Durability.ACK_AFTER_FLUSH) {
+            for (var stored : pending) {
+                await(stored);
+            }
+        }
+    }
+
+    @Override
+    public List<Domain> list() throws Exception {
+        return delegate.list();
+    }
+
+    @Override
+    public Iterator<Domain> iterator(long offset, long limit) throws Exception {
+        return delegate.iterator(offset, limit);
+    }
+
+    /**
+     * Wait until every domain queued before this call has been stored.
+     * @throws Exception if storing one of the batches failed
+     */
+    public void flush() throws Exception {
+        await(enqueue(null));
+    }
+
+    /**
+     * Stop accepting adds, store what is still queued and stop the flusher thread.
+     */
+    @Override
+    public void close() {
+        markClosed();
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void markClosed() {
+        closing.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closing.writeLock().unlock();
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Domain domain) throws InterruptedException {
+        closing.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("write-behind provider is closed");
+            }
+            var pending = new Pending<>(domain, new CompletableFuture<>());
+            if (!queue.offer(pending, enqueueTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new RejectedExecutionException("write-behind queue is full");
+            }
+            return pending.stored();
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    private static void await(CompletableFuture<Void> stored) throws Exception {
+        try {
+            stored.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void flushLoop() {
+        var batch = new ArrayList<Pending<Domain>>(maxBatchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                var first = queue.poll(maxDelayNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize && first.domain() != null && !closed) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                store(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Interrupted: whatever was not stored fails instead of leaving its callers waiting
+            markClosed();
+            queue.drainTo(batch);
+            var failure = new IllegalStateException("write-behind provider is closed");
+            for (var pending : batch) {
+                pending.stored().completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void store(List<Pending<Domain>> batch) {
+        var domains = new ArrayList<Domain>(batch.size());
+        for (var pending : batch) {
+            if (pending.domain() != null) {
+                domains.add(pending.domain());
+            }
+        }
+        Exception failure = null;
+        if (!domains.isEmpty()) {
+            try {
+                delegate.addAll(domains);
+            } catch (Exception e) {
+                failure = e;
+                if (durability == Durability.ACK_AFTER_ENQUEUE) {
+                    System.err.println("Write-behind flush of " + domains.size() + " domains failed: " + e.getMessage());
+                }
+            }
+        }
+        for (var pending : batch) {
+            if (failure == null) {
+                pending.stored().complete(null);
+            } else {
+                pending.stored().completeExceptionally(failure);
+            }
+        }
+    }
+}
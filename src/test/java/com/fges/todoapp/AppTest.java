@@ -1,14 +1,26 @@
 package com.fges.todoapp;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Unit test for simple App.
  */
 public class AppTest 
 {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Rigorous Test :-)
      */
@@ -17,4 +29,30 @@ public class AppTest
     {
         assertTrue( true );
     }
+
+    @Test
+    public void tokenizeHandlesQuotesAndEscapes()
+    {
+        assertEquals(List.of("insert", "-d", "hello world", "it's", "a\"b", ""),
+                App.tokenize("insert  -d \"hello world\" it\\'s 'a\"b' ''"));
+    }
+
+    @Test
+    public void replRunsCommandsAgainstSessionSource() throws Exception
+    {
+        Path source = folder.getRoot().toPath().resolve("todos.json");
+        String commands = "insert \"first todo\"\ninsert -d second\n\nlist -d\nquit\nlist\n";
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            assertEquals(0, App.handleReplCommand(source, false, new BufferedReader(new StringReader(commands))));
+        } finally {
+            System.setOut(out);
+        }
+
+        assertEquals(List.of("TODO inserted successfully", "TODO inserted successfully", "- [DONE] second"),
+                captured.toString().lines().toList());
+    }
 }
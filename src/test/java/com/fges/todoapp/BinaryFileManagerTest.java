@@ -0,0 +1,112 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests du gestionnaire de fichiers binaires ".todo".
+ */
+public class BinaryFileManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BinaryFileManager manager = new BinaryFileManager();
+
+    @Test
+    public void roundTripsAcrossSessions() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.todo");
+        List<Todo> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(new Todo("task " + i + " é", i % 3 == 0));
+        }
+        manager.insertAll(expected.subList(0, 9), file);
+        manager.insert(expected.get(9).task(), expected.get(9).done(), file);
+        manager.insertAll(expected.subList(10, 20), file);
+
+        assertEquals(expected, manager.readAll(file));
+    }
+
+    @Test
+    public void listOnlyDonePrintsDoneTodos() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.todo");
+        manager.insertAll(List.of(new Todo("a", false), new Todo("b", true), new Todo("c", false), new Todo("d", true)), file);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            manager.list(file, true);
+        } finally {
+            System.setOut(out);
+        }
+
+        assertEquals("- [DONE] b" + System.lineSeparator() + "- [DONE] d" + System.lineSeparator(), captured.toString());
+    }
+
+    @Test
+    public void repeatedTextsAreWrittenOnce() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.todo");
+        List<Todo> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(new Todo("Relancer le client numéro " + (i % 10), i % 2 == 0));
+        }
+        manager.insertAll(expected.subList(0, 500), file);
+        manager.insertAll(expected.subList(500, 1000), file);
+
+        // Vingt textes écrits (dix par session), puis une référence de 4 octets par tâche
+        assertTrue(Files.size(file) < BinaryFileManager.HEADER_SIZE + 20 * 40 + 980 * 4 + 125);
+        List<Todo> todos = manager.readAll(file);
+        assertEquals(expected, todos);
+        assertSame(todos.get(0).task(), todos.get(10).task());
+    }
+
+    @Test
+    public void readsAndAppendsToVersion1Files() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.todo");
+        byte[] a = "a".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer v1 = ByteBuffer.allocate(BinaryFileManager.HEADER_SIZE + 2 * (4 + a.length) + 1);
+        v1.putInt(BinaryFileManager.MAGIC).putShort((short) 1).putShort((short) 0).putInt(2)
+                .putLong(BinaryFileManager.HEADER_SIZE + 2 * (4 + a.length)).putInt(0);
+        v1.putInt(a.length).put(a).putInt(a.length).put(a).put((byte) 0b10);
+        Files.write(file, v1.array());
+
+        manager.insertAll(List.of(new Todo("b", false), new Todo("b", true)), file);
+
+        assertEquals(List.of(new Todo("a", false), new Todo("a", true), new Todo("b", false), new Todo("b", true)),
+                manager.readAll(file));
+    }
+
+    @Test
+    public void unfinishedSessionLeavesFileIntact() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.todo");
+        manager.insertAll(List.of(new Todo("a", true), new Todo("b", false)), file);
+        byte[] before = Files.readAllBytes(file);
+
+        TodoWriter writer = manager.openWriter(file);
+        for (int i = 0; i < 10_000; i++) {
+            writer.write(new Todo("pending " + i, false));
+        }
+        // Session interrompue avant la fermeture : le fichier en place n'a pas bougé
+        assertArrayEquals(before, Files.readAllBytes(file));
+        assertEquals(List.of(new Todo("a", true), new Todo("b", false)), manager.readAll(file));
+
+        writer.close();
+        assertEquals(10_002, manager.readAll(file).size());
+        assertEquals(new Todo("a", true), manager.readAll(file).get(0));
+    }
+}
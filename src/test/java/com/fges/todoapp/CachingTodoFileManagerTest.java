@@ -0,0 +1,162 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests du cache des fichiers de tâches.
+ */
+public class CachingTodoFileManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TodoCache cache = new TodoCache(4, 100_000);
+    private final CachingTodoFileManager manager = new CachingTodoFileManager(new CsvFileManager(), cache);
+
+    @Test
+    public void servesUnchangedFileFromMemory() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        Files.writeString(file, "\"a\",false\n");
+        FileTime modified = Files.getLastModifiedTime(file);
+        assertEquals(List.of(new Todo("a", false)), manager.readAll(file));
+
+        // Même taille et même date : le contenu vient du cache
+        Files.writeString(file, "\"b\",false\n");
+        Files.setLastModifiedTime(file, modified);
+        assertEquals(List.of(new Todo("a", false)), manager.readAll(file));
+
+        // Date différente : le fichier est relu
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 1000));
+        assertEquals(List.of(new Todo("b", false)), manager.readAll(file));
+    }
+
+    @Test
+    public void insertsUpdateCachedEntry() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        manager.insert("a", false, file);
+        manager.insertAll(List.of(new Todo("b", true), new Todo("c", false)), file);
+
+        List<Todo> expected = List.of(new Todo("a", false), new Todo("b", true), new Todo("c", false));
+        assertEquals(expected, cache.get(TodoCache.Key.of(file)));
+        assertEquals(expected, new CsvFileManager().readAll(file));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFiles() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            manager.insert("todo " + i, false, folder.getRoot().toPath().resolve(i + ".csv"));
+        }
+        assertEquals(null, cache.get(TodoCache.Key.of(folder.getRoot().toPath().resolve("0.csv"))));
+        assertEquals(List.of(new Todo("todo 4", false)), cache.get(TodoCache.Key.of(folder.getRoot().toPath().resolve("4.csv"))));
+    }
+
+    @Test
+    public void filesLargerThanTheCacheAreStreamedWithoutBeingKept() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append("\"task ").append(i).append("\",false\n");
+        }
+        Files.writeString(file, content);
+
+        assertEquals(2000, manager.readAll(file).size());
+        assertEquals(null, cache.get(TodoCache.Key.of(file)));
+    }
+
+    @Test
+    public void dictionarySharesEqualTodos() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        Files.writeString(file, "\"same\",false\n\"same\",true\n\"same\",false\n");
+        cache.setDictionary(new TaskDictionary());
+
+        List<Todo> todos = manager.readAll(file);
+        manager.insert("same", true, file);
+        List<Todo> cached = cache.get(TodoCache.Key.of(file));
+
+        assertEquals(List.of(new Todo("same", false), new Todo("same", true), new Todo("same", false), new Todo("same", true)), cached);
+        assertSame(cached.get(0), cached.get(2));
+        assertSame(cached.get(1), cached.get(3));
+        assertSame(cached.get(0).task(), cached.get(1).task());
+        assertEquals(todos, cached.subList(0, 3));
+    }
+
+    @Test
+    public void writeRacingWithAnotherWriterIsNotCachedAsAnAppend() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        CsvFileManager csv = new CsvFileManager();
+        csv.insert("existing", false, file);
+        boolean[] race = {false};
+        CachingTodoFileManager racing = new CachingTodoFileManager(new TodoFileManager() {
+            @Override
+            public TodoWriter openWriter(Path filePath) throws IOException {
+                if (race[0]) {
+                    // Un autre processus écrit juste avant que l'écrivain obtienne le verrou
+                    new CsvFileManager().insert("external", true, filePath);
+                }
+                return csv.openWriter(filePath);
+            }
+
+            @Override
+            public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+                csv.forEach(filePath, visitor);
+            }
+        }, cache);
+        racing.readAll(file);
+
+        race[0] = true;
+        racing.insertAll(List.of(new Todo("added", false)), file);
+
+        assertEquals(List.of(new Todo("existing", false), new Todo("external", true), new Todo("added", false)), racing.readAll(file));
+    }
+
+    @Test
+    public void writeFollowedByAnotherWriterIsNotCachedWithItsVersion() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        CsvFileManager csv = new CsvFileManager();
+        csv.insert("existing", false, file);
+        CachingTodoFileManager racing = new CachingTodoFileManager(new TodoFileManager() {
+            @Override
+            public TodoWriter openWriter(Path filePath) throws IOException {
+                TodoWriter writer = csv.openWriter(filePath);
+                return new TodoWriter() {
+                    @Override
+                    public void write(Todo todo) throws IOException {
+                        writer.write(todo);
+                    }
+
+                    @Override
+                    public void commit() throws IOException {
+                        writer.commit();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        writer.close();
+                        // Un autre processus écrit dès que l'écrivain relâche le verrou
+                        new CsvFileManager().insert("external", true, filePath);
+                    }
+                };
+            }
+
+            @Override
+            public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+                csv.forEach(filePath, visitor);
+            }
+        }, cache);
+        racing.readAll(file);
+
+        racing.insertAll(List.of(new Todo("added", false)), file);
+
+        assertEquals(List.of(new Todo("existing", false), new Todo("added", false), new Todo("external", true)), racing.readAll(file));
+    }
+}
@@ -0,0 +1,124 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests du gestionnaire de fichiers CSV.
+ */
+public class CsvFileManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CsvFileManager manager = new CsvFileManager();
+
+    @Test
+    public void insertQuotesTaskAsRfc4180() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        manager.insert("say \"hi\", then leave", true, file);
+
+        assertEquals("\"say \"\"hi\"\", then leave\",true\n", Files.readString(file));
+    }
+
+    @Test
+    public void roundTripsCommasQuotesAndNewlines() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        List<Todo> todos = List.of(
+                new Todo("plain", false),
+                new Todo("a, b", true),
+                new Todo("\"quoted\"", false),
+                new Todo("multi\nline", true),
+                new Todo("", false),
+                new Todo("accentué", true));
+        manager.insertAll(todos, file);
+
+        assertEquals(todos, manager.readAll(file));
+    }
+
+    @Test
+    public void readsLegacyLines() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        Files.writeString(file, "\"legacy, task\",true\r\nunquoted,TRUE\n\n\"say \"hi\" now\",false\nno comma\n");
+
+        assertEquals(List.of(
+                new Todo("legacy, task", true),
+                new Todo("unquoted", true),
+                new Todo("say \"hi\" now", false),
+                new Todo("Unknown Task", false)), manager.readAll(file));
+    }
+
+    @Test
+    public void parallelReadMatchesSequentialRead() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        byte[] alphabet = {'a', 'b', ',', '"', '"', '\n', '\r', 't', 'r', 'u', 'e'};
+        Random random = new Random(42);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 200; round++) {
+                // Octets quelconques : l'automate doit suivre l'analyseur même sur un fichier invalide
+                byte[] content = new byte[random.nextInt(300)];
+                for (int i = 0; i < content.length; i++) {
+                    content[i] = alphabet[random.nextInt(alphabet.length)];
+                }
+                Files.write(file, content);
+                List<String> expected = new ArrayList<>();
+                manager.forEachIndexed(file, (offset, todo) -> expected.add(offset + " " + todo));
+
+                int chunkSize = 1 + random.nextInt(40);
+                List<String> actual = new ArrayList<>();
+                new ParallelCsvReader(chunkSize, pool).forEachIndexed(file, (offset, todo) -> actual.add(offset + " " + todo));
+
+                assertEquals("chunk size " + chunkSize + " on " + new String(content), expected, actual);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void largeFilesAreReadInOrder() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        List<Todo> todos = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            todos.add(new Todo(i % 7 == 0 ? "line " + i + "\nwith \"quotes\", commas" : "task " + i, i % 3 == 0));
+        }
+        manager.insertAll(todos, file);
+
+        assertEquals(todos, new CsvFileManager(0, 1024).readAll(file));
+    }
+
+    @Test
+    public void readFromReturnsOnlyCompleteAppendedRecords() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        manager.insert("first", false, file);
+        List<Todo> seen = new ArrayList<>();
+        FollowableTodoFileManager.Cursor cursor = manager.readFrom(file, FollowableTodoFileManager.Cursor.START, seen::add);
+        assertEquals(List.of(new Todo("first", false)), seen);
+
+        // Écriture en cours : la fin de ligne de l'enregistrement n'est pas encore là
+        Files.writeString(file, "\"multi\nline\",true\n\"partial", StandardOpenOption.APPEND);
+        seen.clear();
+        cursor = manager.readFrom(file, cursor, seen::add);
+        assertEquals(List.of(new Todo("multi\nline", true)), seen);
+
+        Files.writeString(file, " task\",false\n", StandardOpenOption.APPEND);
+        seen.clear();
+        cursor = manager.readFrom(file, cursor, seen::add);
+        assertEquals(List.of(new Todo("partial task", false)), seen);
+
+        seen.clear();
+        manager.readFrom(file, cursor, seen::add);
+        assertEquals(List.of(), seen);
+    }
+}
@@ -0,0 +1,111 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests des insertions concurrentes sur un même fichier.
+ */
+public class GroupCommitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void concurrentInsertsAreNotLost() throws Exception {
+        for (TodoFileManager manager : List.of(new JsonFileManager(), new CsvFileManager(), new BinaryFileManager())) {
+            Path file = folder.getRoot().toPath().resolve("todos-" + manager.getClass().getSimpleName());
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int t = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        manager.insert(t + "-" + i, i % 2 == 0, file);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            Set<Todo> todos = new HashSet<>(manager.readAll(file));
+            assertEquals(400, todos.size());
+        }
+    }
+
+    @Test
+    public void interruptedWaiterIsNotWritten() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.csv");
+        CsvFileManager csv = new CsvFileManager();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TodoFileManager slow = new TodoFileManager() {
+            @Override
+            public TodoWriter openWriter(Path filePath) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return csv.openWriter(filePath);
+            }
+
+            @Override
+            public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+                csv.forEach(filePath, visitor);
+            }
+        };
+        Thread first = new Thread(() -> {
+            try {
+                slow.insert("first", false, file);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        first.start();
+        writing.await();
+
+        Exception[] failure = new Exception[1];
+        Thread second = new Thread(() -> {
+            try {
+                slow.insert("second", false, file);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        second.start();
+        // Attend que le second thread soit en file derrière l'écriture en cours
+        while (second.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        second.interrupt();
+        second.join(TimeUnit.SECONDS.toMillis(5));
+        release.countDown();
+        first.join(TimeUnit.SECONDS.toMillis(5));
+        // Le lot suivant ne doit pas reprendre la tâche abandonnée
+        slow.insert("third", false, file);
+
+        assertTrue(failure[0] instanceof InterruptedIOException);
+        assertEquals(List.of(new Todo("first", false), new Todo("third", false)), csv.readAll(file));
+    }
+}
@@ -0,0 +1,68 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests du gestionnaire de fichiers compressés ".json.gz" et ".csv.gz".
+ */
+public class GzipTodoFileManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void csvSessionsAppendGzipMembers() throws Exception {
+        GzipTodoFileManager manager = new GzipTodoFileManager(GzipTodoFileManager.Format.CSV);
+        Path file = folder.getRoot().toPath().resolve("todos.csv.gz");
+        manager.insert("first", false, file);
+        manager.insertAll(List.of(new Todo("second, with \"quotes\"", true), new Todo("multi\nline", false)), file);
+
+        assertEquals("\"first\",false\n\"second, with \"\"quotes\"\"\",true\n\"multi\nline\",false\n", gunzip(file));
+        assertEquals(List.of(new Todo("first", false), new Todo("second, with \"quotes\"", true), new Todo("multi\nline", false)),
+                manager.readAll(file));
+        assertEquals(false, Files.exists(file.resolveSibling("todos.csv.gz.tmp")));
+    }
+
+    @Test
+    public void jsonSessionsRewriteTheArrayInOnePass() throws Exception {
+        GzipTodoFileManager manager = new GzipTodoFileManager(GzipTodoFileManager.Format.JSON);
+        Path file = folder.getRoot().toPath().resolve("todos.json.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write("[{\"task\":\"a\",\"extra\":[1]},42]".getBytes(StandardCharsets.UTF_8));
+        }
+        manager.insert("b", true, file);
+        manager.insertAll(List.of(new Todo("c", false)), file);
+
+        assertEquals("[{\"task\":\"a\",\"extra\":[1]},42,{\"task\":\"b\",\"done\":true},{\"task\":\"c\",\"done\":false}]", gunzip(file));
+        assertEquals(List.of(new Todo("a", false), new Todo("b", true), new Todo("c", false)), manager.readAll(file));
+    }
+
+    @Test
+    public void migrateRecompressesBetweenFormats() throws Exception {
+        Path source = folder.getRoot().toPath().resolve("todos.csv");
+        Path output = folder.getRoot().toPath().resolve("archive.json.gz");
+        Files.writeString(source, "\"a\",false\n\"b\",true\n");
+
+        assertEquals(0, App.exec(new String[]{"migrate", "-s", source.toString(), "-o", output.toString()}));
+
+        assertEquals("[{\"task\":\"a\",\"done\":false},{\"task\":\"b\",\"done\":true}]", gunzip(output));
+    }
+
+    private static String gunzip(Path file) throws Exception {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
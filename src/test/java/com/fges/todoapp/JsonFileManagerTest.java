@@ -0,0 +1,170 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests du gestionnaire de fichiers JSON.
+ */
+public class JsonFileManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final JsonFileManager manager = new JsonFileManager();
+
+    @Test
+    public void insertAppendsToExistingArray() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        manager.insert("first", false, file);
+        manager.insert("second, with comma", true, file);
+        manager.compact(file);
+
+        assertEquals("[{\"task\":\"first\",\"done\":false},{\"task\":\"second, with comma\",\"done\":true}]",
+                Files.readString(file));
+    }
+
+    @Test
+    public void insertIntoEmptyArrayWithTrailingWhitespace() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        Files.writeString(file, "[ ]\n\n");
+        manager.insert("only", false, file);
+        manager.compact(file);
+
+        assertEquals("[ {\"task\":\"only\",\"done\":false}]", Files.readString(file));
+    }
+
+    @Test
+    public void insertReplacesNonArrayContent() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        Files.writeString(file, "{\"unexpected\":true}");
+        manager.insert("fresh", false, file);
+
+        assertEquals("[{\"task\":\"fresh\",\"done\":false}]", Files.readString(file));
+    }
+
+    @Test
+    public void readAllSkipsUnknownFieldsAndNonObjects() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        Files.writeString(file, "[{\"task\":\"a\",\"extra\":[1,{\"x\":2}],\"done\":true},42,{\"done\":false,\"task\":\"b\"}]");
+
+        List<Todo> todos = manager.readAll(file);
+
+        assertEquals(List.of(new Todo("a", true), new Todo("b", false)), todos);
+    }
+
+    @Test
+    public void insertAllWritesWholeBatchInOneSession() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        manager.insert("existing", true, file);
+        manager.insertAll(List.of(new Todo("a", false), new Todo("b", true)), file);
+
+        assertEquals(List.of(new Todo("existing", true), new Todo("a", false), new Todo("b", true)), manager.readAll(file));
+    }
+
+    @Test
+    public void insertsGoToTheLogUntilCompaction() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        Path wal = JsonWriteAheadLog.pathOf(file);
+        manager.insert("first", false, file);
+        manager.insert("second", true, file);
+        manager.insert("third", false, file);
+
+        assertEquals("[{\"task\":\"first\",\"done\":false}]", Files.readString(file));
+        assertEquals(List.of(new Todo("first", false), new Todo("second", true), new Todo("third", false)), manager.readAll(file));
+
+        manager.compact(file);
+
+        assertEquals(false, Files.exists(wal));
+        assertEquals("[{\"task\":\"first\",\"done\":false},{\"task\":\"second\",\"done\":true},{\"task\":\"third\",\"done\":false}]",
+                Files.readString(file));
+    }
+
+    @Test
+    public void largeLogIsCompactedOnClose() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        manager.insert("first", false, file);
+        List<Todo> todos = new ArrayList<>();
+        todos.add(new Todo("first", false));
+        for (int i = 0; i < 30_000; i++) {
+            todos.add(new Todo("task number " + i, i % 2 == 0));
+        }
+        manager.insertAll(todos.subList(1, todos.size()), file);
+
+        assertEquals(false, Files.exists(JsonWriteAheadLog.pathOf(file)));
+        assertEquals(todos, manager.readAll(file));
+    }
+
+    @Test
+    public void tornLogTailIsIgnored() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        Path wal = JsonWriteAheadLog.pathOf(file);
+        manager.insert("first", false, file);
+        manager.insert("second", true, file);
+        Files.writeString(wal, "{\"task\":\"half", StandardOpenOption.APPEND);
+
+        assertEquals(List.of(new Todo("first", false), new Todo("second", true)), manager.readAll(file));
+
+        manager.insert("third", false, file);
+        assertEquals(List.of(new Todo("first", false), new Todo("second", true), new Todo("third", false)), manager.readAll(file));
+    }
+
+    @Test
+    public void staleLogIsIgnored() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        manager.insert("first", false, file);
+        manager.insert("logged", true, file);
+        // Le fichier principal est remplacé sans passer par la compaction
+        Files.writeString(file, "[{\"task\":\"replaced\",\"done\":true},{\"task\":\"other\",\"done\":false}]");
+
+        assertEquals(List.of(new Todo("replaced", true), new Todo("other", false)), manager.readAll(file));
+
+        manager.insert("next", false, file);
+        assertEquals(List.of(new Todo("replaced", true), new Todo("other", false), new Todo("next", false)), manager.readAll(file));
+    }
+
+    @Test
+    public void readAtReachesLoggedTodos() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        manager.insert("first", true, file);
+        manager.insert("logged", true, file);
+        manager.insert("not done", false, file);
+
+        List<Long> offsets = new ArrayList<>();
+        manager.forEachIndexed(file, (offset, todo) -> {
+            if (todo.done()) {
+                offsets.add(offset);
+            }
+        });
+        List<Todo> done = new ArrayList<>();
+        manager.readAt(file, offsets.stream().mapToLong(Long::longValue).toArray(), done::add);
+
+        assertEquals(List.of(new Todo("first", true), new Todo("logged", true)), done);
+    }
+
+    @Test
+    public void readFromFollowsTheLogAcrossCompactions() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        manager.insert("first", false, file);
+        List<Todo> seen = new ArrayList<>();
+        FollowableTodoFileManager.Cursor cursor = manager.readFrom(file, FollowableTodoFileManager.Cursor.START, seen::add);
+
+        manager.insert("second", true, file);
+        cursor = manager.readFrom(file, cursor, seen::add);
+        manager.insert("third", false, file);
+        manager.compact(file);
+        manager.insert("fourth", false, file);
+        cursor = manager.readFrom(file, cursor, seen::add);
+        manager.readFrom(file, cursor, seen::add);
+
+        assertEquals(List.of(new Todo("first", false), new Todo("second", true), new Todo("third", false), new Todo("fourth", false)), seen);
+    }
+}
@@ -0,0 +1,124 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests de la source partitionnée en plusieurs fichiers.
+ */
+public class ShardedTodoFileManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final ShardedTodoFileManager manager = new ShardedTodoFileManager(App::createStorageManager, 200, pool);
+
+    @After
+    public void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void rollsToNewShardsAndReadsThemInOrder() throws Exception {
+        Path directory = folder.newFolder("todos").toPath();
+        Files.writeString(directory.resolve("todos-1.csv"), "\"from csv\",true\n");
+        Files.writeString(directory.resolve("todos-2.json"), "[{\"task\":\"from json\",\"done\":false}]");
+        Files.writeString(directory.resolve("todos-2.json.wal.tmp"), "ignored");
+        List<Todo> expected = new ArrayList<>(List.of(new Todo("from csv", true), new Todo("from json", false)));
+        for (int i = 0; i < 40; i++) {
+            expected.add(new Todo("task " + i, i % 3 == 0));
+        }
+
+        manager.insertAll(expected.subList(2, 22), directory);
+        for (Todo todo : expected.subList(22, 42)) {
+            manager.insert(todo.task(), todo.done(), directory);
+        }
+
+        List<Path> shards = ShardedTodoFileManager.shards(directory);
+        assertTrue(shards.size() > 3);
+        assertEquals(directory.resolve("todos-3.json"), shards.get(2));
+        assertEquals(expected, manager.readAll(directory));
+    }
+
+    @Test
+    public void failingVisitorCancelsShardsReadAhead() throws Exception {
+        Path directory = folder.newFolder("big").toPath();
+        for (int shard = 1; shard <= 6; shard++) {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                content.append("\"task ").append(i).append("\",false\n");
+            }
+            Files.writeString(directory.resolve("todos-" + shard + ".csv"), content);
+        }
+
+        try {
+            manager.forEach(directory, todo -> {
+                throw new IOException("stop");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("stop", e.getMessage());
+        }
+        // Les lectures en avance, bloquées sur leur file pleine, sont abandonnées
+        assertTrue(pool.awaitQuiescence(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void globCreatesFirstShardAndOrdersNumbersByValue() throws Exception {
+        Path source = folder.getRoot().toPath().resolve("part-*.csv");
+        manager.insert("first", false, source);
+        assertEquals(List.of(folder.getRoot().toPath().resolve("part-00001.csv")), ShardedTodoFileManager.shards(source));
+
+        Files.writeString(folder.getRoot().toPath().resolve("part-10.csv"), "\"ten\",false\n");
+        Files.writeString(folder.getRoot().toPath().resolve("part-9.csv"), "\"nine\",false\n");
+        Files.writeString(folder.getRoot().toPath().resolve("other.csv"), "\"other\",false\n");
+
+        assertEquals(List.of(new Todo("first", false), new Todo("nine", false), new Todo("ten", false)), manager.readAll(source));
+        assertEquals(folder.getRoot().toPath().resolve("part-11.csv"),
+                ShardedTodoFileManager.nextShard(source, folder.getRoot().toPath().resolve("part-10.csv")));
+    }
+
+    @Test
+    public void nextShardKeepsCompoundExtensions() throws Exception {
+        Path directory = folder.newFolder("archives").toPath();
+
+        assertEquals(directory.resolve("todos_2.csv.gz"), ShardedTodoFileManager.nextShard(directory, directory.resolve("todos.csv.gz")));
+        assertEquals(directory.resolve("todos-10.json.gz"),
+                ShardedTodoFileManager.nextShard(directory, directory.resolve("todos-09.json.gz")));
+    }
+
+    @Test
+    public void migrateCreatesMissingShardDirectory() throws Exception {
+        Path source = folder.getRoot().toPath().resolve("big.csv");
+        Path shards = folder.getRoot().toPath().resolve("shards");
+        Files.writeString(source, "\"a\",false\n\"b\",true\n");
+
+        assertEquals(0, App.exec(new String[]{"migrate", "-s", source.toString(), "-o", shards + "/"}));
+
+        assertEquals(List.of(shards.resolve("todos-00001.json")), ShardedTodoFileManager.shards(shards));
+        assertEquals(List.of(new Todo("a", false), new Todo("b", true)), manager.readAll(shards));
+    }
+
+    @Test
+    public void missingPathWithoutSeparatorIsNotADirectory() throws Exception {
+        Path typo = folder.getRoot().toPath().resolve("todos");
+
+        assertEquals(1, App.exec(new String[]{"list", "-s", typo.toString()}));
+        assertEquals(1, App.exec(new String[]{"insert", "-s", typo.toString(), "task"}));
+        assertEquals(false, Files.exists(typo));
+    }
+}
@@ -0,0 +1,124 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests du fournisseur CRUD adossé à un fichier de tâches.
+ */
+public class TodoCrudProviderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesThroughAndReloadsExternalChanges() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        JsonFileManager manager = new JsonFileManager();
+        manager.insert("existing", false, file);
+
+        TodoCrudProvider provider = new TodoCrudProvider(manager, file);
+        provider.add(new Todo("added", true));
+        provider.addAll(List.of(new Todo("b1", false), new Todo("b2", false)));
+        assertEquals(List.of(new Todo("existing", false), new Todo("added", true), new Todo("b1", false), new Todo("b2", false)),
+                provider.list());
+        assertEquals(provider.list(), manager.readAll(file));
+
+        // Écriture faite par un autre processus : l'instantané est rechargé
+        new JsonFileManager().insert("external", true, file);
+        assertEquals(new Todo("external", true), provider.list().get(4));
+        assertEquals(new Todo("b2", false), provider.iterator(3, 10).next());
+    }
+
+    @Test
+    public void reloadsShardsChangedByOtherWriters() throws Exception {
+        Path directory = folder.newFolder("shards").toPath();
+        ShardedTodoFileManager manager = new ShardedTodoFileManager(App::createStorageManager);
+        manager.insert("first", false, directory);
+
+        TodoCrudProvider provider = new TodoCrudProvider(manager, directory);
+        provider.add(new Todo("added", true));
+
+        // Le dossier garde sa date quand un fichier existant est complété
+        new CsvFileManager().insert("external", false, directory.resolve("todos-00002.csv"));
+        assertEquals(List.of(new Todo("first", false), new Todo("added", true), new Todo("external", false)), provider.list());
+        new CsvFileManager().insert("appended", true, directory.resolve("todos-00002.csv"));
+        assertEquals(new Todo("appended", true), provider.list().get(3));
+    }
+
+    @Test
+    public void writeRacingWithAnotherWriterReloadsSnapshot() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        JsonFileManager json = new JsonFileManager();
+        json.insert("existing", false, file);
+        boolean[] race = {false};
+        TodoFileManager racing = new TodoFileManager() {
+            @Override
+            public TodoWriter openWriter(Path filePath) throws IOException {
+                if (race[0]) {
+                    // Un autre processus écrit juste avant que l'écrivain obtienne le verrou
+                    new JsonFileManager().insert("external", true, filePath);
+                }
+                return json.openWriter(filePath);
+            }
+
+            @Override
+            public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+                json.forEach(filePath, visitor);
+            }
+        };
+
+        TodoCrudProvider provider = new TodoCrudProvider(racing, file);
+        race[0] = true;
+        provider.add(new Todo("added", false));
+
+        assertEquals(List.of(new Todo("existing", false), new Todo("external", true), new Todo("added", false)), provider.list());
+    }
+
+    @Test
+    public void writeFollowedByAnotherWriterReloadsSnapshot() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("todos.json");
+        JsonFileManager json = new JsonFileManager();
+        json.insert("existing", false, file);
+        TodoFileManager racing = new TodoFileManager() {
+            @Override
+            public TodoWriter openWriter(Path filePath) throws IOException {
+                TodoWriter writer = json.openWriter(filePath);
+                return new TodoWriter() {
+                    @Override
+                    public void write(Todo todo) throws IOException {
+                        writer.write(todo);
+                    }
+
+                    @Override
+                    public void commit() throws IOException {
+                        writer.commit();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        writer.close();
+                        // Un autre processus écrit dès que l'écrivain relâche le verrou
+                        new JsonFileManager().insert("external", true, filePath);
+                    }
+                };
+            }
+
+            @Override
+            public void forEach(Path filePath, TodoVisitor visitor) throws IOException {
+                json.forEach(filePath, visitor);
+            }
+        };
+
+        TodoCrudProvider provider = new TodoCrudProvider(racing, file);
+        provider.add(new Todo("added", false));
+
+        assertEquals(List.of(new Todo("existing", false), new Todo("added", false), new Todo("external", true)), provider.list());
+    }
+}
@@ -0,0 +1,51 @@
+package com.fges.todoapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests de l'index des tâches terminées.
+ */
+public class TodoIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void listDoneUsesAndRebuildsIndex() throws Exception {
+        for (IndexableTodoFileManager manager : List.of(new CsvFileManager(), new JsonFileManager())) {
+            Path file = folder.newFile("todos" + (manager instanceof CsvFileManager ? ".csv" : ".json")).toPath();
+            Files.delete(file);
+            manager.insertAll(List.of(new Todo("a", false), new Todo("b, \"quoted\"", true), new Todo("c", false)), file);
+
+            assertFalse(TodoIndex.listDone(manager, file, false));
+            assertEquals("- [DONE] b, \"quoted\"\n", listDone(manager, file));
+            assertTrue(Files.exists(TodoIndex.indexPath(file)));
+
+            manager.insert("d", true, file);
+            assertEquals("- [DONE] b, \"quoted\"\n- [DONE] d\n", listDone(manager, file));
+        }
+    }
+
+    private static String listDone(IndexableTodoFileManager manager, Path file) throws Exception {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            assertTrue(TodoIndex.listDone(manager, file, true));
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString().replace(System.lineSeparator(), "\n");
+    }
+}
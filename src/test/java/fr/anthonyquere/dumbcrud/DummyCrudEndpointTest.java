@@ -0,0 +1,149 @@
+package fr.anthonyquere.dumbcrud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DummyCrudEndpointTest {
+
+    public record Item(String name) {
+    }
+
+    private final List<Item> items = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final CrudProvider<Item> provider = new CrudProvider<>() {
+        @Override
+        public void add(Item item) {
+            items.add(item);
+        }
+
+        @Override
+        public void addAll(List<Item> batch) {
+            batchSizes.add(batch.size());
+            items.addAll(batch);
+        }
+
+        @Override
+        public List<Item> list() {
+            synchronized (items) {
+                return new ArrayList<>(items);
+            }
+        }
+    };
+
+    private final Metrics metrics = new Metrics();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private DummyCrudEndpoint<Item> endpoint;
+
+    @Before
+    public void start() throws Exception {
+        endpoint = new DummyCrudEndpoint<>("items", provider, Item.class)
+                .withExecutor(Executors.newFixedThreadPool(4))
+                .withBacklog(64)
+                .withBatchSize(2)
+                .withMaxPageSize(3)
+                .withMetrics(metrics);
+        endpoint.run(0);
+    }
+
+    @After
+    public void stop() {
+        endpoint.stop(0);
+    }
+
+    @Test
+    public void postThenGet() throws Exception {
+        assertEquals("{\"message\":\"inserted\"}", send("POST", "", "{\"name\":\"first\"}"));
+        assertEquals("[{\"name\":\"first\"}]", send("GET", "", null));
+    }
+
+    @Test
+    public void servesConcurrentRequests() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            responses.add(client.sendAsync(request("POST", "", "{\"name\":\"item " + i + "\"}"), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+        }
+        assertEquals(50, items.size());
+    }
+
+    @Test
+    public void getPagesWithOffsetLimitAndCursor() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            items.add(new Item("item " + i));
+        }
+
+        var first = client.send(request("GET", "?limit=2", null), HttpResponse.BodyHandlers.ofString());
+        assertEquals("[{\"name\":\"item 0\"},{\"name\":\"item 1\"}]", first.body());
+        String cursor = first.headers().firstValue("X-Next-Cursor").orElseThrow();
+
+        var second = client.send(request("GET", "?limit=2&cursor=" + cursor, null), HttpResponse.BodyHandlers.ofString());
+        assertEquals("[{\"name\":\"item 2\"},{\"name\":\"item 3\"}]", second.body());
+
+        var last = client.send(request("GET", "?offset=4&limit=2", null), HttpResponse.BodyHandlers.ofString());
+        assertEquals("[{\"name\":\"item 4\"}]", last.body());
+        assertEquals(false, last.headers().firstValue("X-Next-Cursor").isPresent());
+
+        assertEquals("{\"message\":\"ERROR: invalid limit: -1\"}", send("GET", "?limit=-1", null));
+
+        // A limit above the maximum page size is lowered to it
+        var capped = client.send(request("GET", "?limit=100000000", null), HttpResponse.BodyHandlers.ofString());
+        assertEquals("[{\"name\":\"item 0\"},{\"name\":\"item 1\"},{\"name\":\"item 2\"}]", capped.body());
+        assertEquals("3", capped.headers().firstValue("X-Next-Cursor").orElseThrow());
+    }
+
+    @Test
+    public void postAcceptsArraysAndNdjsonInBatches() throws Exception {
+        assertEquals("{\"message\":\"inserted 3\"}", send("POST", "", "[{\"name\":\"a\"},{\"name\":\"b\"},{\"name\":\"c\"}]"));
+        assertEquals("{\"message\":\"inserted 2\"}", send("POST", "", "{\"name\":\"d\"}\n{\"name\":\"e\"}\n"));
+        assertEquals("{\"message\":\"inserted 0\"}", send("POST", "", "[]"));
+
+        assertEquals(List.of(new Item("a"), new Item("b"), new Item("c"), new Item("d"), new Item("e")), items);
+        assertEquals(List.of(2, 1, 2), batchSizes);
+    }
+
+    @Test
+    public void metricsCountRequestsPerMethod() throws Exception {
+        send("POST", "", "{\"name\":\"first\"}");
+        send("GET", "", null);
+        send("GET", "", null);
+        send("DELETE", "", null);
+        // The latency is recorded once the handler returns, possibly after the client got its response
+        for (int i = 0; i < 100 && metrics.latency("http.OTHER").count() == 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, metrics.latency("http.GET").count());
+        assertEquals(1, metrics.latency("http.POST").count());
+        assertEquals(1, metrics.latency("http.OTHER").count());
+
+        var response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + endpoint.port() + "/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body(), response.body().contains("\"http.GET\":{\"count\":2,"));
+    }
+
+    private String send(String method, String query, String body) throws Exception {
+        return client.send(request(method, query, body), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private HttpRequest request(String method, String query, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + endpoint.port() + "/items" + query))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,40 @@
+package fr.anthonyquere.dumbcrud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithBoundedError() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(value + " <= " + upperBound, value <= upperBound);
+            assertTrue(value + " close to " + upperBound, upperBound - value <= Math.max(0, value / 16));
+        }
+    }
+
+    @Test
+    public void percentilesFollowRecordedValues() {
+        var histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500_500, histogram.mean());
+        assertEquals(1_000_000, histogram.max());
+        assertTrue(Math.abs(histogram.valueAtPercentile(50) - 500_000) <= 500_000 / 16);
+        assertTrue(Math.abs(histogram.valueAtPercentile(99) - 990_000) <= 990_000 / 16);
+        assertEquals(1_000_000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, new LatencyHistogram().valueAtPercentile(99));
+        assertEquals(0, new LatencyHistogram().mean());
+    }
+}
@@ -0,0 +1,145 @@
+package fr.anthonyquere.dumbcrud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+
+public class WriteBehindCrudProviderTest {
+
+    private final List<String> items = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile boolean blocked;
+
+    private final CrudProvider<String> provider = new CrudProvider<>() {
+        @Override
+        public void add(String item) throws Exception {
+            addAll(List.of(item));
+        }
+
+        @Override
+        public void addAll(List<String> batch) throws Exception {
+            if (blocked) {
+                released.await();
+            }
+            if (batch.contains("boom")) {
+                throw new IllegalStateException("boom");
+            }
+            batchSizes.add(batch.size());
+            items.addAll(batch);
+        }
+
+        @Override
+        public List<String> list() {
+            synchronized (items) {
+                return new ArrayList<>(items);
+            }
+        }
+    };
+
+    private WriteBehindCrudProvider<String> writeBehind(int capacity, WriteBehindCrudProvider.Durability durability) {
+        return new WriteBehindCrudProvider<>(provider, capacity, 10, Duration.ofMillis(50), Duration.ofMillis(100), durability);
+    }
+
+    @Test
+    public void coalescesQueuedAddsIntoBatches() throws Exception {
+        var writeBehind = writeBehind(100, WriteBehindCrudProvider.Durability.ACK_AFTER_ENQUEUE);
+        for (int i = 0; i < 25; i++) {
+            writeBehind.add("item " + i);
+        }
+        writeBehind.flush();
+
+        assertEquals(25, writeBehind.list().size());
+        assertEquals("item 0", writeBehind.list().get(0));
+        assertTrue("batches were " + batchSizes, batchSizes.size() < 25);
+        writeBehind.close();
+    }
+
+    @Test
+    public void ackAfterFlushReturnsOnceStored() throws Exception {
+        var writeBehind = writeBehind(100, WriteBehindCrudProvider.Durability.ACK_AFTER_FLUSH);
+        writeBehind.addAll(List.of("a", "b"));
+
+        assertEquals(List.of("a", "b"), writeBehind.list());
+        writeBehind.close();
+    }
+
+    @Test
+    public void ackAfterFlushReportsStoreFailure() throws Exception {
+        var writeBehind = writeBehind(100, WriteBehindCrudProvider.Durability.ACK_AFTER_FLUSH);
+        try {
+            writeBehind.add("boom");
+            fail("expected the store failure");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        writeBehind.close();
+    }
+
+    @Test
+    public void rejectsAddsWhenQueueStaysFull() throws Exception {
+        blocked = true;
+        var writeBehind = writeBehind(2, WriteBehindCrudProvider.Durability.ACK_AFTER_ENQUEUE);
+        try {
+            for (int i = 0; i < 20; i++) {
+                writeBehind.add("item " + i);
+            }
+            fail("expected backpressure");
+        } catch (RejectedExecutionException e) {
+            // the flusher is blocked, so the queue stays full
+        } finally {
+            released.countDown();
+        }
+        writeBehind.close();
+        assertTrue(items.size() < 20);
+    }
+
+    @Test
+    public void closeStoresWhatIsStillQueued() throws Exception {
+        var writeBehind = writeBehind(100, WriteBehindCrudProvider.Durability.ACK_AFTER_ENQUEUE);
+        for (int i = 0; i < 5; i++) {
+            writeBehind.add("item " + i);
+        }
+        writeBehind.close();
+
+        assertEquals(5, items.size());
+    }
+
+    @Test
+    public void addsRacingWithCloseAreStoredOrRejected() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            items.clear();
+            var writeBehind = writeBehind(100, WriteBehindCrudProvider.Durability.ACK_AFTER_FLUSH);
+            var acknowledged = Collections.synchronizedList(new ArrayList<String>());
+            var adders = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                String item = "round " + round + " item " + t;
+                adders.add(new Thread(() -> {
+                    try {
+                        writeBehind.add(item);
+                        acknowledged.add(item);
+                    } catch (IllegalStateException e) {
+                        // closed before the add was queued
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }));
+            }
+            adders.forEach(Thread::start);
+            writeBehind.close();
+            for (Thread adder : adders) {
+                adder.join(5_000);
+                assertTrue("an add is still waiting after close", !adder.isAlive());
+            }
+            assertTrue(items.containsAll(acknowledged));
+        }
+    }
+}